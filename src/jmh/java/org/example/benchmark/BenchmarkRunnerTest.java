@@ -0,0 +1,56 @@
+package org.example.benchmark;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Runs the JMH benchmarks inside a started application (in-memory H2), so they can use its beans.
+// Benchmarks are run in this JVM (no forks), which is why the numbers are only comparable between runs of this runner.
+// Usage: ./mvnw test -Pjmh [-Djmh.include=<regexp>] [-Djmh.result=<file>]
+@QuarkusTest
+@TestProfile(BenchmarkRunnerTest.BenchmarkProfile.class)
+class BenchmarkRunnerTest {
+
+    public static class BenchmarkProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "quarkus.hibernate-orm.log.sql", "false",
+                    "quarkus.hibernate-orm.statistics", "false",
+                    "books.virtual-threads.pinning-detection.enabled", "false",
+                    // The service benchmarks measure the queries, not lookups in the book cache
+                    "books.cache.enabled", "false"
+            );
+        }
+    }
+
+    @Test
+    void runBenchmarks() throws RunnerException {
+
+        var options = new OptionsBuilder()
+                .include(System.getProperty("jmh.include", BenchmarkRunnerTest.class.getPackageName() + ".*Benchmark"))
+                .forks(0)
+                .warmupIterations(Integer.getInteger("jmh.warmup-iterations", 3))
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(Integer.getInteger("jmh.measurement-iterations", 5))
+                .measurementTime(TimeValue.seconds(1))
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty("jmh.result", "target/jmh-result.json"))
+                .build();
+
+        var results = new Runner(options).run();
+
+        assertFalse(results.isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.benchmark;
+
+import io.quarkus.arc.Arc;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.example.repository.BookRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookRepositoryBenchmark {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    @Param({ "0", "1", "5", "20" })
+    int authorsCount;
+
+    private BookRepository bookRepository;
+    private long bookId;
+    private Set<String> authorNamesA;
+    private Set<String> authorNamesB;
+    private boolean useAuthorsA;
+
+    @Setup
+    public void setUp() {
+        bookRepository = Arc.container().instance(BookRepository.class).get();
+
+        var prefix = "benchmark " + SEQUENCE.incrementAndGet();
+        authorNamesA = authorNames(prefix + " author A", authorsCount);
+        authorNamesB = authorNames(prefix + " author B", authorsCount);
+        bookId = bookRepository.create(new Book(null, prefix + " book", 2000, authors(authorNamesA))).getId();
+    }
+
+    // A new book with new authors: the authors are looked up, persisted and linked to the book
+    @Benchmark
+    public Book create() {
+        var id = SEQUENCE.incrementAndGet();
+        var authorNames = authorNames("benchmark " + id + " author", authorsCount);
+        return bookRepository.create(new Book(null, "benchmark " + id + " book", 2000, authors(authorNames)));
+    }
+
+    // The authors of a book are replaced as a whole, alternating between two sets of existing authors
+    @Benchmark
+    public Book updateAuthors() {
+        useAuthorsA = !useAuthorsA;
+        var book = new Book();
+        book.setAuthors(authors(useAuthorsA ? authorNamesA : authorNamesB));
+        return bookRepository.update(bookId, book);
+    }
+
+    private static Set<String> authorNames(String prefix, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> prefix + " " + i)
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<Author> authors(Set<String> names) {
+        return names.stream()
+                .map(name -> new Author(null, name, null))
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.arc.Arc;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.example.service.BookJsonCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPOutputStream;
+
+// The CPU cost of a response body: a book encoded by Jackson on every request or taken from the JSON cache,
+// and the cost of serializing and of gzip-compressing a page of books (at the level set by 'quarkus.http.compression-level')
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BookResponseBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int COMPRESSION_LEVEL = 6;
+
+    private ObjectMapper objectMapper;
+    private BookJsonCache bookJsonCache;
+    private List<Book> books;
+    private Book book;
+    private byte[] pageJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Arc.container().instance(ObjectMapper.class).get();
+        bookJsonCache = Arc.container().instance(BookJsonCache.class).get();
+
+        var authors = Set.of(new Author(1L, "benchmark author", null));
+        books = LongStream.range(0, PAGE_SIZE)
+                .mapToObj(id -> {
+                    var book = new Book(id, "benchmark book with a reasonably long title " + id, 2000, new HashSet<>(authors));
+                    book.setVersion(0L);
+                    return book;
+                })
+                .toList();
+
+        book = books.getFirst();
+        pageJson = objectMapper.writeValueAsBytes(books);
+    }
+
+    @Benchmark
+    public byte[] bookSerialized() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(book);
+    }
+
+    @Benchmark
+    public byte[] bookFromJsonCache() {
+        return bookJsonCache.getJson(book);
+    }
+
+    @Benchmark
+    public byte[] pageGzipped() throws IOException {
+        var output = new ByteArrayOutputStream(pageJson.length);
+        try (var gzip = new GZIPOutputStream(output) {
+            {
+                def.setLevel(COMPRESSION_LEVEL);
+            }
+        }) {
+            gzip.write(pageJson);
+        }
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pageSerialized() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(books);
+    }
+}
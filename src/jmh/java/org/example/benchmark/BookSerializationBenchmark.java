@@ -0,0 +1,45 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.arc.Arc;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BookSerializationBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int booksCount;
+
+    private ObjectMapper objectMapper;
+    private List<Book> books;
+
+    @Setup
+    public void setUp() {
+        // The same mapper as the REST layer uses
+        objectMapper = Arc.container().instance(ObjectMapper.class).get();
+
+        var authors = Set.of(
+                new Author(1L, "benchmark author 1", null),
+                new Author(2L, "benchmark author 2", null)
+        );
+        books = LongStream.range(0, booksCount)
+                .mapToObj(id -> new Book(id, "benchmark book " + id, 2000, new HashSet<>(authors)))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializeBooks() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(books);
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.benchmark;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ManagedContext;
+import io.quarkus.logging.Log;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.example.repository.BookRepository;
+import org.example.service.BookService;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookServiceBenchmark {
+
+    private static final int BOOKS_COUNT = 1_000;
+
+    private BookService bookService;
+    private ManagedContext requestContext;
+    private List<String> titles;
+    private List<Long> ids;
+
+    @Setup
+    public void setUp() {
+        bookService = Arc.container().instance(BookService.class).get();
+        requestContext = Arc.container().requestContext();
+
+        titles = IntStream.range(0, BOOKS_COUNT)
+                .mapToObj(i -> "benchmark title " + i)
+                .toList();
+
+        // A build time property: run once with '-Dquarkus.hibernate-orm.second-level-caching-enabled=false' to compare
+        var secondLevelCache = Arc.container().instance(SessionFactory.class).get()
+                .getSessionFactoryOptions().isSecondLevelCacheEnabled();
+        Log.infof("Second-level cache enabled: %s", secondLevelCache);
+
+        var bookRepository = Arc.container().instance(BookRepository.class).get();
+        ids = new ArrayList<>();
+        requestContext.activate();
+        try {
+            for (var i = 0; i < titles.size(); i++) {
+                var title = titles.get(i);
+                var book = bookRepository.find("title", title).firstResult();
+                if (book == null) {
+                    var authors = Set.of(new Author(null, "benchmark author " + i % 100, null),
+                            new Author(null, "benchmark author " + (i + 1) % 100, null));
+                    book = bookRepository.create(new Book(null, title, 2000, new HashSet<>(authors)));
+                }
+                ids.add(book.getId());
+            }
+        } finally {
+            requestContext.terminate();
+        }
+    }
+
+    // Every call runs in its own request context, like a request to 'GET /books/title/{title}'.
+    // The benchmark profile disables the book cache, so every call goes to Hibernate: the query and the book with
+    // its authors come from the second-level cache when it's enabled, and from the database otherwise.
+    @Benchmark
+    public Book getByTitle() {
+        var title = titles.get(ThreadLocalRandom.current().nextInt(titles.size()));
+        requestContext.activate();
+        try {
+            return bookService.getByTitle(title);
+        } finally {
+            requestContext.terminate();
+        }
+    }
+
+    // Like a request to 'GET /books/{id}': the book and its authors
+    @Benchmark
+    public Book getById() {
+        var id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        requestContext.activate();
+        try {
+            return bookService.getById(id);
+        } finally {
+            requestContext.terminate();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+// 'books' is the number of books of the author
+@RegisterForReflection
+public record AuthorDto(Long id, String name, long books) {
+}
@@ -0,0 +1,12 @@
+package org.example.dto;
+
+// A committed change as sent by 'GET /books/stream' ('created', 'updated', 'deleted' or 'cleared'):
+// 'data' is the JSON of the book after the change (before it for a deleted book, 'null' when all books are deleted),
+// encoded once for all the subscribers. Sequence numbers grow by one per change, so a gap means that changes were dropped.
+// The last change of a subscriber that fell too far behind is an 'overflow'.
+public record BookChange(long sequence, String type, String data) {
+
+    public static BookChange overflow(long sequence) {
+        return new BookChange(sequence, "overflow", "null");
+    }
+}
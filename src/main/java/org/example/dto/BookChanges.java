@@ -0,0 +1,22 @@
+package org.example.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.List;
+
+// A page of 'GET /books/changes': the latest change of every book changed after the token that was given,
+// in the order of the changes. 'token' is the 'since' of the next request, and 'more' tells that
+// the next page is already there. A 'CLEARED' change (all books deleted) comes before the changes that followed it.
+// 'resync' tells that changes after the token have been deleted by the retention of the log: the client has to load
+// all the books again, and continue from the token of this answer.
+@RegisterForReflection
+public record BookChanges(List<Change> changes, long token, boolean more, boolean resync) {
+
+    public enum Type {
+        UPSERTED, DELETED, CLEARED
+    }
+
+    // 'book' is the current state of an upserted book (null for the other types)
+    public record Change(Type type, Long id, BookDto book) {
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.example.model.Author;
+import org.example.model.Book;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RegisterForReflection
+public record BookDto(Long id, String title, Integer year, List<String> authors, Long version) {
+
+    public static BookDto of(Book book) {
+        var authorNames = book.getAuthors().stream()
+                .map(Author::getName)
+                .sorted()
+                .collect(Collectors.toCollection(ArrayList::new));
+        return new BookDto(book.getId(), book.getTitle(), book.getYear(), authorNames, book.getVersion());
+    }
+
+    // The id is not copied: the result is always a new (transient) book
+    public Book toBook() {
+        var bookAuthors = authors == null
+                ? new HashSet<Author>()
+                : authors.stream()
+                        .map(name -> new Author(null, name, new ArrayList<>()))
+                        .collect(Collectors.toCollection(HashSet::new));
+        return new Book(null, title, year, bookAuthors);
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.dto;
+
+import java.util.List;
+
+// Numbers of books per year and per author, the largest ones first
+public record BookFacets(long books, List<YearCount> years, List<AuthorCount> authors) {
+
+    public record YearCount(int year, long books) {
+    }
+
+    public record AuthorCount(String author, long books) {
+    }
+}
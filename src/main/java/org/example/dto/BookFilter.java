@@ -0,0 +1,11 @@
+package org.example.dto;
+
+import java.util.List;
+
+// Selects the books of a bulk update or delete: the conditions that are given must all match
+public record BookFilter(List<Long> ids, Integer year, String author) {
+
+    public boolean isEmpty() {
+        return (ids == null || ids.isEmpty()) && year == null && (author == null || author.isBlank());
+    }
+}
@@ -0,0 +1,6 @@
+package org.example.dto;
+
+import java.time.Instant;
+
+public record BookVersion(Long id, Long version, Instant updatedAt) {
+}
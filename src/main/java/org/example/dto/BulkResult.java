@@ -0,0 +1,5 @@
+package org.example.dto;
+
+// 'authorsDeleted' counts the authors left without books by the change
+public record BulkResult(long books, long authorsDeleted) {
+}
@@ -0,0 +1,11 @@
+package org.example.dto;
+
+import java.util.List;
+
+// Changes applied to every selected book: a new year, and authors to add or remove (by name)
+public record BulkUpdate(Integer year, List<String> addAuthors, List<String> removeAuthors) {
+
+    public boolean isEmpty() {
+        return year == null && (addAuthors == null || addAuthors.isEmpty()) && (removeAuthors == null || removeAuthors.isEmpty());
+    }
+}
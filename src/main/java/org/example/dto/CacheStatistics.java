@@ -0,0 +1,4 @@
+package org.example.dto;
+
+public record CacheStatistics(String cache, long size, long hits, long misses, long evictions) {
+}
@@ -0,0 +1,19 @@
+package org.example.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.List;
+import java.util.function.Function;
+
+@RegisterForReflection
+public record CursorPage<T>(List<T> items, Long nextCursor) {
+
+    // Expects up to 'limit + 1' items: the extra one only tells that there is a next page
+    public static <T> CursorPage<T> of(List<T> items, int limit, Function<T, Long> cursorExtractor) {
+        if (items.size() <= limit) {
+            return new CursorPage<>(items, null);
+        }
+        var page = items.subList(0, limit);
+        return new CursorPage<>(page, cursorExtractor.apply(page.getLast()));
+    }
+}
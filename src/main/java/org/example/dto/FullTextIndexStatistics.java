@@ -0,0 +1,4 @@
+package org.example.dto;
+
+public record FullTextIndexStatistics(long books, long terms, long postings, long estimatedBytes, long estimatedBytesPerBook) {
+}
@@ -0,0 +1,10 @@
+package org.example.dto;
+
+import java.util.List;
+
+public record ImportSummary(long received, long created, long failed, List<ImportError> errors) {
+
+    // 'index' is the position of the record in the imported stream, starting from 0
+    public record ImportError(long index, String message) {
+    }
+}
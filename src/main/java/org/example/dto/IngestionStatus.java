@@ -0,0 +1,21 @@
+package org.example.dto;
+
+// State of a book queued by 'POST /books?async=true': 'bookId' is set once it's created, 'error' if it failed
+public record IngestionStatus(String trackingId, State state, Long bookId, String error) {
+
+    public enum State {
+        QUEUED, CREATED, FAILED
+    }
+
+    public static IngestionStatus queued(String trackingId) {
+        return new IngestionStatus(trackingId, State.QUEUED, null, null);
+    }
+
+    public static IngestionStatus created(String trackingId, Long bookId) {
+        return new IngestionStatus(trackingId, State.CREATED, bookId, null);
+    }
+
+    public static IngestionStatus failed(String trackingId, String error) {
+        return new IngestionStatus(trackingId, State.FAILED, null, error);
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.event;
+
+import org.example.dto.BookDto;
+
+// Fired by BookRepository inside the transaction of a write.
+// 'book' is the state after the change and 'previous' the state before it (both null when all books are deleted).
+public record BookEvent(Type type, BookDto book, BookDto previous) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED, CLEARED
+    }
+
+    public static BookEvent created(BookDto book) {
+        return new BookEvent(Type.CREATED, book, null);
+    }
+
+    public static BookEvent updated(BookDto book, BookDto previous) {
+        return new BookEvent(Type.UPDATED, book, previous);
+    }
+
+    public static BookEvent deleted(BookDto previous) {
+        return new BookEvent(Type.DELETED, null, previous);
+    }
+
+    public static BookEvent cleared() {
+        return new BookEvent(Type.CLEARED, null, null);
+    }
+}
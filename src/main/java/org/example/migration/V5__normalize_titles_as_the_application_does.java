@@ -0,0 +1,43 @@
+package org.example.migration;
+
+import org.example.model.Book;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.SQLException;
+
+// V1_1 filled in title_normalized with lower(trim(title)), which only strips spaces and lower-cases by the
+// collation of the database: the rows it got wrong are normalized again with the rules of the application
+public class V5__normalize_titles_as_the_application_does extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+
+        var connection = context.getConnection();
+        try (var select = connection.prepareStatement("select id, title, title_normalized from books");
+             var update = connection.prepareStatement("update books set title_normalized = ? where id = ?")) {
+
+            select.setFetchSize(BATCH_SIZE);
+            var batched = 0;
+            try (var resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    var titleNormalized = Book.normalizeTitle(resultSet.getString(2));
+                    if (titleNormalized.equals(resultSet.getString(3))) {
+                        continue;
+                    }
+                    update.setString(1, titleNormalized);
+                    update.setLong(2, resultSet.getLong(1));
+                    update.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        update.executeBatch();
+                    }
+                }
+            }
+            if (batched % BATCH_SIZE != 0) {
+                update.executeBatch();
+            }
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package org.example.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.util.ArrayList;
 import java.util.List;
 
+@RegisterForReflection
 @Entity
+@Cacheable
 @Table(name = "authors")
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
@@ -16,7 +19,8 @@ import java.util.List;
 public class Author {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "authors_seq")
+    @SequenceGenerator(name = "authors_seq", sequenceName = "authors_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "name", nullable = false, unique = true)
@@ -1,29 +1,48 @@
 package org.example.model;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
+// Serialized by Jackson from BookJsonCache and inside Response entities, which the native build doesn't detect on its own
+@RegisterForReflection
 @Entity
+@Cacheable
 @Table(name = "books",
-        uniqueConstraints = @UniqueConstraint(columnNames = { "title", "publish_year" })
+        uniqueConstraints = @UniqueConstraint(columnNames = { "title", "publish_year" }),
+        indexes = @Index(name = "idx_books_title_normalized", columnList = "title_normalized, id")
 )
-@NoArgsConstructor @AllArgsConstructor
+@NoArgsConstructor
 @Getter @Setter
 @EqualsAndHashCode(of = { "title", "year" })
 @ToString
 public class Book {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "books_seq")
+    @SequenceGenerator(name = "books_seq", sequenceName = "books_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "title", nullable = false)
     private String title;
 
+    // Lower-cased title for case-insensitive and prefix lookups, maintained by the entity itself
+    @Column(name = "title_normalized")
+    @JsonIgnore
+    @ToString.Exclude
+    private String titleNormalized;
+
     @Column(name = "publish_year")
     private Integer year;
 
@@ -31,8 +50,39 @@ public class Book {
     @JoinTable(
             name = "book_author",
             joinColumns = @JoinColumn(name = "book_id"),
-            inverseJoinColumns = @JoinColumn(name = "author_id")
+            inverseJoinColumns = @JoinColumn(name = "author_id"),
+            indexes = @Index(name = "idx_book_author_author_id_book_id", columnList = "author_id, book_id")
     )
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JsonBackReference
     private Set<Author> authors = new HashSet<>();
+
+    // Incremented by every update (including changes of the authors), used for optimistic locking and as the ETag
+    @Version
+    @Column(name = "version", nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    @JsonIgnore
+    @ToString.Exclude
+    private Instant updatedAt;
+
+    public Book(Long id, String title, Integer year, Set<Author> authors) {
+        this.id = id;
+        this.title = title;
+        this.year = year;
+        this.authors = authors;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void normalizeTitle() {
+        titleNormalized = normalizeTitle(title);
+    }
+
+    public static String normalizeTitle(String title) {
+        return title == null ? null : title.strip().toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,36 @@
+package org.example.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.example.event.BookEvent;
+
+import java.time.Instant;
+
+// A row of the change log of books, written in the transaction of the change (see BookChangeLogRepository)
+@Entity
+@Table(name = "book_changes")
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@ToString
+public class BookChangeLogEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_changes_seq")
+    @SequenceGenerator(name = "book_changes_seq", sequenceName = "book_changes_seq", allocationSize = 50)
+    private Long id;
+
+    // Null when all books are deleted
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", length = 16, nullable = false)
+    private BookEvent.Type type;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+
+    // The order of the commits, given once the change is committed (see BookChangeLogRepository#assignPositions)
+    @Column(name = "log_position", insertable = false, updatable = false)
+    private Long position;
+}
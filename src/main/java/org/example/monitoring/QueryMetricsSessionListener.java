@@ -0,0 +1,38 @@
+package org.example.monitoring;
+
+import io.quarkus.arc.Arc;
+import org.hibernate.BaseSessionEventListener;
+
+// Hibernate creates an instance for every session (see 'hibernate.session.events.auto'),
+// and it adds every JDBC statement of the session to the statistics of the current request, if there is one.
+public class QueryMetricsSessionListener extends BaseSessionEventListener {
+
+    private long statementStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        statementExecuted();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        statementExecuted();
+    }
+
+    private void statementExecuted() {
+        var container = Arc.container();
+        if (container != null && container.requestContext().isActive()) {
+            container.instance(RequestQueryStatistics.class).get().add(System.nanoTime() - statementStart);
+        }
+    }
+}
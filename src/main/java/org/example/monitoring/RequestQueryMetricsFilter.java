@@ -0,0 +1,44 @@
+package org.example.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import org.jboss.resteasy.reactive.server.ServerResponseFilter;
+import org.jboss.resteasy.reactive.server.SimpleResourceInfo;
+
+import java.util.concurrent.TimeUnit;
+
+// Records how many statements every resource method executed and how long they took, per request.
+// Statements run while a streamed response is written (e.g. the export) happen after this filter and aren't counted.
+public class RequestQueryMetricsFilter {
+
+    @Inject
+    MeterRegistry meterRegistry;
+    @Inject
+    RequestQueryStatistics requestQueryStatistics;
+
+    @ServerResponseFilter
+    public void recordQueries(SimpleResourceInfo resourceInfo) {
+
+        if (resourceInfo == null || resourceInfo.getResourceClass() == null) {
+            return;
+        }
+
+        var tags = Tags.of(
+                "class", resourceInfo.getResourceClass().getSimpleName(),
+                "method", resourceInfo.getMethodName()
+        );
+
+        DistributionSummary.builder("books.request.queries")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(requestQueryStatistics.getCount());
+
+        Timer.builder("books.request.queries.time")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(requestQueryStatistics.getNanos(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.monitoring;
+
+import jakarta.enterprise.context.RequestScoped;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// JDBC statements executed while handling the current request
+@RequestScoped
+public class RequestQueryStatistics {
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+
+    void add(long statementNanos) {
+        count.incrementAndGet();
+        nanos.addAndGet(statementNanos);
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public long getNanos() {
+        return nanos.get();
+    }
+}
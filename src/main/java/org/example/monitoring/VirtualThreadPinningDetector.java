@@ -0,0 +1,83 @@
+package org.example.monitoring;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Listens to the JFR events the JVM emits when a virtual thread blocks while pinned to its carrier thread
+// (inside 'synchronized' or a native frame), e.g. in the JDBC driver or the connection pool.
+@ApplicationScoped
+public class VirtualThreadPinningDetector {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 20;
+
+    @ConfigProperty(name = "books.virtual-threads.pinning-detection.enabled", defaultValue = "false")
+    boolean enabled;
+    @ConfigProperty(name = "books.virtual-threads.pinning-detection.threshold", defaultValue = "20ms")
+    Duration threshold;
+
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private volatile RecordingStream recordingStream;
+
+    // Starting JFR takes up to a few seconds, so it's done in the background rather than delaying the first request
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Thread.ofVirtual().name("pinning-detector-start").start(this::startRecording);
+    }
+
+    private void startRecording() {
+        try {
+            var stream = new RecordingStream();
+            stream.enable(PINNED_EVENT)
+                    .withThreshold(threshold)
+                    .withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::onPinned);
+            stream.startAsync();
+            recordingStream = stream;
+        } catch (RuntimeException e) {
+            // E.g. a native executable built without JFR support ('--enable-monitoring=jfr')
+            Log.warnf("Virtual thread pinning detection is not available: %s", e.getMessage());
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        var stream = recordingStream;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        var stackTrace = event.getStackTrace() == null ? "" : event.getStackTrace().getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(this::format)
+                .collect(Collectors.joining("\n\tat ", "\n\tat ", ""));
+        Log.warnf("Virtual thread was pinned to its carrier thread for %d ms%s", event.getDuration().toMillis(), stackTrace);
+    }
+
+    private String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + "(line " + frame.getLineNumber() + ")";
+    }
+
+    public boolean isRecording() {
+        return recordingStream != null;
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+}
@@ -2,8 +2,67 @@ package org.example.repository;
 
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.example.dto.AuthorDto;
 import org.example.model.Author;
+import org.hibernate.Session;
+import org.hibernate.jpa.AvailableHints;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @ApplicationScoped
 public class AuthorRepository implements PanacheRepository<Author> {
+
+    @Inject
+    ReadReplica readReplica;
+
+    public List<Author> findByNames(Collection<String> names) {
+        return find("name in ?1", names)
+                .withHint(AvailableHints.HINT_CACHEABLE, true)
+                .list();
+    }
+
+    // Keyset pagination by id. The numbers of books are counted in the same query,
+    // by a subquery per author that reads only the (author_id, book_id) index of the page's authors.
+    public List<AuthorDto> findPage(Long after, int limit) {
+        return readReplica.read(session -> session
+                .createSelectionQuery("""
+                        select new org.example.dto.AuthorDto(a.id, a.name, (select count(*) from a.books))
+                        from Author a
+                        where a.id > :after
+                        order by a.id""", AuthorDto.class)
+                .setParameter("after", after == null ? Long.MIN_VALUE : after)
+                .setMaxResults(limit)
+                .getResultList());
+    }
+
+    // Inserts the authors that don't exist yet in the caller's transaction, so they're rolled back along with it
+    // and no second connection is needed. A name just inserted by a concurrent transaction is skipped
+    // ('on conflict do nothing' waits for that transaction to end), so the caller reads the names back afterwards.
+    // Names are inserted in a fixed order, so that transactions inserting the same names can't deadlock.
+    // Returns the number of authors inserted.
+    @Transactional
+    public int insertMissing(Collection<String> names) {
+
+        if (names.isEmpty()) {
+            return 0;
+        }
+
+        var sortedNames = names.stream().sorted().toList();
+        var values = IntStream.rangeClosed(1, sortedNames.size())
+                .mapToObj(i -> "(nextval('authors_seq'), ?" + i + ")")
+                .collect(Collectors.joining(", "));
+
+        var query = getEntityManager().unwrap(Session.class)
+                .createNativeQuery("insert into authors (id, name) values " + values + " on conflict do nothing", Object.class)
+                .addSynchronizedEntityClass(Author.class);
+        for (int i = 0; i < sortedNames.size(); i++) {
+            query.setParameter(i + 1, sortedNames.get(i));
+        }
+        return query.executeUpdate();
+    }
 }
@@ -0,0 +1,151 @@
+package org.example.repository;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Sort;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.example.event.BookEvent;
+import org.example.model.BookChangeLogEntry;
+import org.hibernate.Session;
+import org.hibernate.jpa.AvailableHints;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Every change of a book is logged by the transaction that makes it, as BookRepository fires its BookEvent.
+// Ids come from blocks of a sequence allocated per instance, so they don't tell the order of the commits: a change
+// with a lesser id can be committed after a reader went past greater ones, by this instance or another. Readers
+// therefore go by the position of the changes, given to committed changes only, by one transaction at a time
+// across all the instances (see V6__order_book_changes_by_commit.sql).
+@ApplicationScoped
+public class BookChangeLogRepository implements PanacheRepository<BookChangeLogEntry> {
+
+    @Inject
+    ReadYourWrites readYourWrites;
+
+    // Called inside the transaction of the change, so the entry is committed or rolled back along with it
+    void onBookEvent(@Observes BookEvent event) {
+
+        var bookId = switch (event.type()) {
+            case CREATED, UPDATED -> event.book().id();
+            case DELETED -> event.previous().id();
+            case CLEARED -> null;
+        };
+        var entry = new BookChangeLogEntry(null, bookId, event.type(), Instant.now(), null);
+        persist(entry);
+
+        if (Arc.container().requestContext().isActive()) {
+            readYourWrites.written(entry.getId());
+        }
+    }
+
+    // Gives the committed changes that have none a position, in the order of their ids, and returns the last position.
+    // Every change with a position is committed, and the ones committed from now on get greater positions.
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public long assignPositions() {
+        return getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+
+            // Most of the time every change already has one, which doesn't need the lock
+            if (!hasChangesWithoutPosition(connection)) {
+                return queryLong(connection, "select last_position from book_change_positions where id = 1");
+            }
+
+            var lastPosition = queryLong(connection, "select last_position from book_change_positions where id = 1 for update");
+
+            var ids = new ArrayList<Long>();
+            try (var statement = connection.prepareStatement("select id from book_changes where log_position is null order by id");
+                 var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+            if (ids.isEmpty()) {
+                return lastPosition;
+            }
+
+            try (var statement = connection.prepareStatement("update book_changes set log_position = ? where id = ?")) {
+                for (var id : ids) {
+                    statement.setLong(1, ++lastPosition);
+                    statement.setLong(2, id);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (var statement = connection.prepareStatement("update book_change_positions set last_position = ? where id = 1")) {
+                statement.setLong(1, lastPosition);
+                statement.executeUpdate();
+            }
+            return lastPosition;
+        });
+    }
+
+    // Entries after the position 'since', in the order of their positions (a range scan of its index)
+    public List<BookChangeLogEntry> findAfter(long since, int limit) {
+        return find("position > ?1", Sort.by("position"), since)
+                .withHint(AvailableHints.HINT_READ_ONLY, true)
+                .page(0, limit)
+                .list();
+    }
+
+    // The greatest position deleted by the retention, a reader that is behind it may have missed changes
+    public long purgedThrough() {
+        return getEntityManager().unwrap(Session.class).doReturningWork(connection ->
+                queryLong(connection, "select purged_through from book_change_positions where id = 1"));
+    }
+
+    // Deletes the changes up to the greatest position of a change made before 'before', returns the number deleted
+    @Transactional
+    public long purge(Instant before) {
+        return getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+
+            var purgedThrough = queryLong(connection, "select purged_through from book_change_positions where id = 1 for update");
+
+            long through;
+            try (var statement = connection.prepareStatement("select max(log_position) from book_changes where changed_at < ?")) {
+                statement.setObject(1, before.atOffset(ZoneOffset.UTC));
+                try (var resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    through = resultSet.getLong(1);
+                }
+            }
+            if (through <= purgedThrough) {
+                return 0L;
+            }
+
+            long deleted;
+            try (var statement = connection.prepareStatement("delete from book_changes where log_position <= ?")) {
+                statement.setLong(1, through);
+                deleted = statement.executeUpdate();
+            }
+            try (var statement = connection.prepareStatement("update book_change_positions set purged_through = ? where id = 1")) {
+                statement.setLong(1, through);
+                statement.executeUpdate();
+            }
+            return deleted;
+        });
+    }
+
+    private boolean hasChangesWithoutPosition(Connection connection) throws SQLException {
+        try (var statement = connection.prepareStatement("select 1 from book_changes where log_position is null")) {
+            statement.setMaxRows(1);
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private long queryLong(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.prepareStatement(sql);
+             var resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
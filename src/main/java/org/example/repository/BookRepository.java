@@ -1,41 +1,359 @@
 package org.example.repository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.narayana.jta.runtime.TransactionConfiguration;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.dto.BookFilter;
+import org.example.dto.BookVersion;
+import org.example.dto.BulkResult;
+import org.example.dto.BulkUpdate;
+import org.example.event.BookEvent;
 import org.example.model.Author;
 import org.example.model.Book;
+import org.hibernate.Hibernate;
+import org.hibernate.ScrollMode;
+import org.hibernate.Session;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class BookRepository implements PanacheRepository<Book> {
 
+    private static final int AUTHORS_PERSIST_ATTEMPTS = 3;
+    // Keeps IN lists well below the limit of bind parameters per statement
+    private static final int IN_LIST_CHUNK_SIZE = 1000;
+
     @PersistenceContext
     EntityManager entityManager;
     @Inject
     AuthorRepository authorRepository;
+    @Inject
+    Event<BookEvent> bookEvents;
+    @Inject
+    MeterRegistry meterRegistry;
+    @Inject
+    ReadReplica readReplica;
+
+    @ConfigProperty(name = "books.bulk.max-books", defaultValue = "10000")
+    int bulkMaxBooks;
+
+    private Counter authorsFound;
+    private Counter authorsCreated;
+    private Counter authorsConflicts;
+
+    @PostConstruct
+    void init() {
+        authorsFound = meterRegistry.counter("books.authors.resolved", "result", "found");
+        authorsCreated = meterRegistry.counter("books.authors.resolved", "result", "created");
+        authorsConflicts = meterRegistry.counter("books.authors.conflicts");
+    }
+
+    // Keyset pagination: seeks by the primary key index, so the cost doesn't depend on how deep the page is.
+    // Books are read as plain rows (not entities) and their authors are read for the whole page at once,
+    // so a page always costs two queries and nothing is kept in the persistence context.
+    public List<BookDto> findPage(Long after, int limit) {
+
+        return readReplica.read(session -> {
+            var books = session
+                    .createSelectionQuery("""
+                            select b.id, b.title, b.year, b.version
+                            from Book b
+                            where b.id > :after
+                            order by b.id""", Object[].class)
+                    .setParameter("after", after == null ? Long.MIN_VALUE : after)
+                    .setMaxResults(limit)
+                    .setReadOnly(true)
+                    .getResultStream()
+                    .map(BookRepository::toBookDto)
+                    .toList();
+
+            fetchAuthors(session, books);
+            return books;
+        });
+    }
+
+    // The same keyset pagination over the books of one author, as a range scan of the (author_id, book_id) index.
+    // The cursor has to be compared with 'book_author.book_id' rather than 'books.id' for the database
+    // to seek to it in the index, which HQL can't express, hence the native query.
+    public List<BookDto> findPageByAuthor(long authorId, Long after, int limit) {
+
+        return readReplica.read(session -> {
+            var books = session
+                    .createNativeQuery("""
+                            select b.id, b.title, b.publish_year, b.version
+                            from book_author ba join books b on b.id = ba.book_id
+                            where ba.author_id = :authorId and ba.book_id > :after
+                            order by ba.book_id""", Object[].class)
+                    .setParameter("authorId", authorId)
+                    .setParameter("after", after == null ? Long.MIN_VALUE : after)
+                    .setMaxResults(limit)
+                    .setReadOnly(true)
+                    .getResultStream()
+                    .map(BookRepository::toBookDto)
+                    .toList();
+
+            fetchAuthors(session, books);
+            return books;
+        });
+    }
+
+    // The prefix is matched as a range on the normalized title ('abc' <= title < 'abd'), which is a range scan
+    // of the (title_normalized, id) index that also returns the rows in the order of the search. This needs the column to be compared by code point
+    // rather than by the rules of a locale: PostgreSQL compares it in the "C" collation (see V4), H2 by character.
+    // LIKE only filters the rows found by the range.
+    public List<BookDto> searchByTitlePrefix(String prefix, int limit) {
+
+        var from = Book.normalizeTitle(prefix);
+        var to = prefixUpperBound(from);
+        var pattern = from.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+
+        var range = to != null ? "b.titleNormalized >= :from and b.titleNormalized < :to" : "b.titleNormalized >= :from";
+
+        return readReplica.read(session -> {
+            var query = session
+                    .createSelectionQuery("select b.id, b.title, b.year, b.version from Book b where " + range
+                            + " and b.titleNormalized like :pattern escape '!' order by b.titleNormalized, b.id", Object[].class)
+                    .setParameter("from", from)
+                    .setParameter("pattern", pattern)
+                    .setMaxResults(limit)
+                    .setReadOnly(true);
+            if (to != null) {
+                query.setParameter("to", to);
+            }
+
+            var books = query.getResultStream()
+                    .map(BookRepository::toBookDto)
+                    .toList();
+
+            fetchAuthors(session, books);
+            return books;
+        });
+    }
+
+    // The least string above all the strings that start with 'prefix' in code point order: the prefix with its last
+    // code point incremented (skipping the surrogates, which aren't code points of their own). A last code point
+    // that can't be incremented is dropped and the one before it is incremented instead. Null if there's no such string.
+    static String prefixUpperBound(String prefix) {
+        var codePoints = prefix.codePoints().toArray();
+        for (int i = codePoints.length - 1; i >= 0; i--) {
+            var next = codePoints[i] + 1;
+            if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE) {
+                next = Character.MAX_SURROGATE + 1;
+            }
+            if (next <= Character.MAX_CODE_POINT) {
+                return new String(codePoints, 0, i) + Character.toString(next);
+            }
+        }
+        return null;
+    }
+
+    // Full aggregation, only used to reconcile the counters of BookFacets: fills in the numbers of books per year
+    // (books without a year are not counted by year) and per author, and returns the number of books.
+    // All of them come from one statement, and so from one snapshot of the database.
+    @SuppressWarnings("unchecked")
+    public long countFacets(Map<Integer, Long> byYear, Map<String, Long> byAuthor) {
+        List<Object[]> rows = entityManager.createNativeQuery("""
+                        select 0, null, count(*) from books
+                        union all
+                        select 1, cast(publish_year as varchar(11)), count(*) from books where publish_year is not null group by publish_year
+                        union all
+                        select 2, a.name, count(*) from book_author ba join authors a on a.id = ba.author_id group by a.name""", Object[].class)
+                .getResultList();
+
+        var books = 0L;
+        for (var row : rows) {
+            var count = ((Number) row[2]).longValue();
+            switch (((Number) row[0]).intValue()) {
+                case 0 -> books = count;
+                case 1 -> byYear.put(Integer.valueOf((String) row[1]), count);
+                default -> byAuthor.put((String) row[1], count);
+            }
+        }
+        return books;
+    }
+
+    // Only the version columns, so conditional requests can be answered without loading the book
+    public BookVersion findVersion(long id) {
+        return readReplica.read(session -> session
+                .createSelectionQuery("""
+                        select new org.example.dto.BookVersion(b.id, b.version, b.updatedAt)
+                        from Book b
+                        where b.id = :id""", BookVersion.class)
+                .setParameter("id", id)
+                .uniqueResult());
+    }
+
+    // Books to be read (not changed), with their authors loaded, as the session of a replica read is closed right after
+    public Book findForRead(long id) {
+        return readReplica.read(session -> withAuthors(session.get(Book.class, id)));
+    }
+
+    // Titles (and normalized titles even more so) aren't unique, the book with the least id is returned
+    public Book findByTitleForRead(String title) {
+        return readReplica.read(session -> withAuthors(session
+                .createSelectionQuery("from Book b where b.title = :title order by b.id", Book.class)
+                .setParameter("title", title)
+                .setCacheable(true)
+                .setMaxResults(1)
+                .uniqueResult()));
+    }
+
+    public Book findByNormalizedTitleForRead(String titleNormalized) {
+        return readReplica.read(session -> withAuthors(session
+                .createSelectionQuery("from Book b where b.titleNormalized = :titleNormalized order by b.id", Book.class)
+                .setParameter("titleNormalized", titleNormalized)
+                .setCacheable(true)
+                .setMaxResults(1)
+                .uniqueResult()));
+    }
+
+    private Book withAuthors(Book book) {
+        if (book != null) {
+            Hibernate.initialize(book.getAuthors());
+        }
+        return book;
+    }
+
+    // A row of 'id, title, year, version', without the authors (see fetchAuthors)
+    private static BookDto toBookDto(Object[] row) {
+        return new BookDto((Long) row[0], (String) row[1], (Integer) row[2], new ArrayList<>(), (Long) row[3]);
+    }
+
+    private void fetchAuthors(Session session, List<BookDto> books) {
+
+        if (books.isEmpty()) {
+            return;
+        }
+
+        var booksById = books.stream()
+                .collect(Collectors.toMap(BookDto::id, Function.identity()));
+
+        session
+                .createSelectionQuery("""
+                        select b.id, a.name
+                        from Book b join b.authors a
+                        where b.id in :ids
+                        order by a.name""", Object[].class)
+                .setParameter("ids", booksById.keySet())
+                .setReadOnly(true)
+                .getResultStream()
+                .forEach(row -> booksById.get((Long) row[0]).authors().add((String) row[1]));
+    }
+
+    // Reads plain rows instead of entities through a forward-only cursor, so nothing piles up
+    // in the persistence context and memory use doesn't depend on the size of the table.
+    // (PostgreSQL only honours the fetch size inside a transaction.)
+    @Transactional
+    @TransactionConfiguration(timeoutFromConfigProperty = "books.export.transaction-timeout")
+    public void scrollAll(int fetchSize, Consumer<BookDto> consumer) {
+
+        var session = entityManager.unwrap(Session.class);
+        var query = session.createSelectionQuery("""
+                        select b.id, b.title, b.year, b.version, a.name
+                        from Book b left join b.authors a
+                        order by b.id, a.name""", Object[].class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true);
+
+        try (var rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+
+            BookDto book = null;
+
+            while (rows.next()) {
+                var row = rows.get();
+                var id = (Long) row[0];
+                if (book == null || !book.id().equals(id)) {
+                    if (book != null) {
+                        consumer.accept(book);
+                    }
+                    book = new BookDto(id, (String) row[1], (Integer) row[2], new ArrayList<>(), (Long) row[3]);
+                }
+                if (row[4] != null) {
+                    book.authors().add((String) row[4]);
+                }
+            }
+
+            if (book != null) {
+                consumer.accept(book);
+            }
+        }
+    }
 
     @Transactional
     public Book create(Book book) {
         persistAuthors(book);
         entityManager.persist(book);
+        bookEvents.fire(BookEvent.created(BookDto.of(book)));
         return book;
     }
 
+    // Every call is a separate transaction, so a failing chunk doesn't roll back the chunks committed before it.
+    // Authors are resolved once for the whole chunk and the persistence context is cleared at the end,
+    // so memory use doesn't grow with the number of chunks.
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void createAll(List<Book> books) {
+
+        var authors = books.stream()
+                .map(Book::getAuthors)
+                .flatMap(Set::stream)
+                .collect(Collectors.toSet());
+
+        var authorsByName = persistAuthors(authors).stream()
+                .collect(Collectors.toMap(Author::getName, Function.identity()));
+
+        for (var book : books) {
+            book.setAuthors(book.getAuthors().stream()
+                    .map(author -> authorsByName.get(author.getName()))
+                    .collect(Collectors.toSet()));
+            entityManager.persist(book);
+            bookEvents.fire(BookEvent.created(BookDto.of(book)));
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
     @Transactional
     public Book update(long id, Book book) {
+        return update(id, book, null);
+    }
+
+    // If 'expectedVersion' is given, the update is rejected unless the book still has this version.
+    // A concurrent update committed in between is detected by the version check of the UPDATE statement itself.
+    @Transactional
+    public Book update(long id, Book book, Long expectedVersion) {
 
         var bookInDB = entityManager.find(Book.class, id);
         if (bookInDB == null) {
             throw new RuntimeException(String.format("Book with id '%d' doesn't exist", id));
         }
+        if (expectedVersion != null && !expectedVersion.equals(bookInDB.getVersion())) {
+            throw new OptimisticLockException(String.format("Book with id '%d' has version %d, not %d",
+                    id, bookInDB.getVersion(), expectedVersion), null, bookInDB);
+        }
+
+        var previous = BookDto.of(bookInDB);
 
         setValueIfNotEmpty(book.getTitle(), bookInDB::setTitle);
         setValueIfNotEmpty(book.getYear(), bookInDB::setYear);
@@ -43,9 +361,213 @@ public class BookRepository implements PanacheRepository<Book> {
         persistAuthors(book);
         setValueIfNotEmpty(book.getAuthors(), bookInDB::setAuthors);
 
+        // Flushed here, so the returned book and the event carry the new version
+        entityManager.flush();
+
+        bookEvents.fire(BookEvent.updated(BookDto.of(bookInDB), previous));
         return bookInDB;
     }
 
+    @Override
+    @Transactional
+    public boolean deleteById(Long id) {
+
+        var book = entityManager.find(Book.class, id);
+        if (book == null) {
+            return false;
+        }
+
+        var previous = BookDto.of(book);
+        entityManager.remove(book);
+
+        bookEvents.fire(BookEvent.deleted(previous));
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public long deleteAll() {
+        var count = entityManager.createQuery("DELETE FROM Book")
+                .executeUpdate();
+        bookEvents.fire(BookEvent.cleared());
+        return count;
+    }
+
+    // Books are selected as plain rows, as in findPage, and changed by set-based statements over their ids
+    // (in chunks of IN_LIST_CHUNK_SIZE ids), so no entity is loaded. The rows are still read to fire the events,
+    // so a filter may select at most 'books.bulk.max-books' books (IllegalArgumentException otherwise).
+    public List<BookDto> findByFilter(BookFilter filter) {
+
+        if (filter.isEmpty()) {
+            throw new IllegalArgumentException("At least one of 'ids', 'year' and 'author' is required");
+        }
+
+        var conditions = new ArrayList<String>();
+        if (filter.ids() != null && !filter.ids().isEmpty()) {
+            conditions.add("b.id in :ids");
+        }
+        if (filter.year() != null) {
+            conditions.add("b.year = :year");
+        }
+        if (filter.author() != null && !filter.author().isBlank()) {
+            conditions.add("b.id in (select ba.id from Book ba join ba.authors a where a.name = :author)");
+        }
+
+        // The ids are sorted, so the books of consecutive chunks stay ordered by id
+        var idChunks = filter.ids() != null && !filter.ids().isEmpty()
+                ? chunks(filter.ids().stream().distinct().sorted().toList())
+                : Collections.<List<Long>>singletonList(null);
+
+        var books = new ArrayList<BookDto>();
+        for (var idChunk : idChunks) {
+            var query = entityManager.unwrap(Session.class)
+                    .createSelectionQuery("select b.id, b.title, b.year, b.version from Book b where "
+                            + String.join(" and ", conditions) + " order by b.id", Object[].class)
+                    .setReadOnly(true)
+                    .setMaxResults(bulkMaxBooks + 1 - books.size());
+            if (idChunk != null) {
+                query.setParameter("ids", idChunk);
+            }
+            if (filter.year() != null) {
+                query.setParameter("year", filter.year());
+            }
+            if (filter.author() != null && !filter.author().isBlank()) {
+                query.setParameter("author", filter.author());
+            }
+
+            query.getResultStream()
+                    .map(BookRepository::toBookDto)
+                    .forEach(books::add);
+            if (books.size() > bulkMaxBooks) {
+                throw new IllegalArgumentException(String.format("The filter selects more than %d books", bulkMaxBooks));
+            }
+        }
+
+        chunks(books).forEach(chunk -> fetchAuthors(entityManager.unwrap(Session.class), chunk));
+        return books;
+    }
+
+    // Rows of 'book_author' are deleted by Hibernate along with the books,
+    // and the authors of these books that have no other books are deleted as well
+    @Transactional
+    public BulkResult deleteByFilter(BookFilter filter) {
+
+        var books = findByFilter(filter);
+        if (books.isEmpty()) {
+            return new BulkResult(0, 0);
+        }
+        var ids = books.stream().map(BookDto::id).toList();
+
+        var authorIds = new HashSet<Long>();
+        long deleted = 0;
+        for (var chunk : chunks(ids)) {
+            authorIds.addAll(entityManager.unwrap(Session.class)
+                    .createSelectionQuery("select distinct a.id from Book b join b.authors a where b.id in :ids", Long.class)
+                    .setParameter("ids", chunk)
+                    .getResultList());
+            deleted += entityManager.createQuery("delete from Book b where b.id in :ids")
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+
+        var authorsDeleted = deleteAuthorsWithoutBooks(authorIds);
+
+        books.forEach(book -> bookEvents.fire(BookEvent.deleted(book)));
+        return new BulkResult(deleted, authorsDeleted);
+    }
+
+    // Every selected book gets a new version, as with a single update
+    @Transactional
+    public BulkResult updateByFilter(BookFilter filter, BulkUpdate update) {
+
+        if (update.isEmpty()) {
+            throw new IllegalArgumentException("At least one of 'year', 'addAuthors' and 'removeAuthors' is required");
+        }
+
+        var previous = findByFilter(filter);
+        if (previous.isEmpty()) {
+            return new BulkResult(0, 0);
+        }
+        var ids = previous.stream().map(BookDto::id).toList();
+        var session = entityManager.unwrap(Session.class);
+
+        if (update.addAuthors() != null && !update.addAuthors().isEmpty()) {
+            var authorIds = persistAuthors(update.addAuthors().stream()
+                            .map(name -> new Author(null, name, new ArrayList<>()))
+                            .collect(Collectors.toSet())).stream()
+                    .map(Author::getId)
+                    .toList();
+            for (var chunk : chunks(ids)) {
+                session.createNativeQuery("""
+                                insert into book_author (book_id, author_id)
+                                select b.id, a.id from books b cross join authors a
+                                where b.id in (:bookIds) and a.id in (:authorIds)
+                                    and not exists (select 1 from book_author ba where ba.book_id = b.id and ba.author_id = a.id)""", Object.class)
+                        .addSynchronizedQuerySpace("book_author")
+                        .setParameter("bookIds", chunk)
+                        .setParameter("authorIds", authorIds)
+                        .executeUpdate();
+            }
+        }
+
+        var authorsRemoved = new HashSet<Long>();
+        if (update.removeAuthors() != null && !update.removeAuthors().isEmpty()) {
+            authorsRemoved.addAll(session.createSelectionQuery("select a.id from Author a where a.name in :names", Long.class)
+                    .setParameter("names", update.removeAuthors())
+                    .getResultList());
+            if (!authorsRemoved.isEmpty()) {
+                for (var chunk : chunks(ids)) {
+                    session.createNativeQuery("delete from book_author where book_id in (:bookIds) and author_id in (:authorIds)", Object.class)
+                            .addSynchronizedQuerySpace("book_author")
+                            .setParameter("bookIds", chunk)
+                            .setParameter("authorIds", authorsRemoved)
+                            .executeUpdate();
+                }
+            }
+        }
+
+        // 'versioned' increments the version (@UpdateTimestamp doesn't apply to bulk statements, so the time is set here)
+        long updated = 0;
+        var now = Instant.now();
+        for (var chunk : chunks(ids)) {
+            var query = session.createMutationQuery("update versioned Book b set b.updatedAt = :now"
+                            + (update.year() != null ? ", b.year = :year" : "") + " where b.id in :ids")
+                    .setParameter("now", now)
+                    .setParameter("ids", chunk);
+            if (update.year() != null) {
+                query.setParameter("year", update.year());
+            }
+            updated += query.executeUpdate();
+        }
+
+        var authorsDeleted = deleteAuthorsWithoutBooks(authorsRemoved);
+
+        var books = findByFilter(new BookFilter(ids, null, null));
+        var previousById = previous.stream()
+                .collect(Collectors.toMap(BookDto::id, Function.identity()));
+        books.forEach(book -> bookEvents.fire(BookEvent.updated(book, previousById.get(book.id()))));
+
+        return new BulkResult(updated, authorsDeleted);
+    }
+
+    private long deleteAuthorsWithoutBooks(Collection<Long> authorIds) {
+        long deleted = 0;
+        for (var chunk : chunks(new ArrayList<>(authorIds))) {
+            deleted += entityManager.createQuery("delete from Author a where a.id in :ids and a.books is empty")
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        return deleted;
+    }
+
+    private static <T> List<List<T>> chunks(List<T> list) {
+        var chunks = new ArrayList<List<T>>();
+        for (int from = 0; from < list.size(); from += IN_LIST_CHUNK_SIZE) {
+            chunks.add(list.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
+    }
+
     private <T> void setValueIfNotEmpty(T value, Consumer<T> setter) {
         if (value == null) {
             return;
@@ -69,22 +591,31 @@ public class BookRepository implements PanacheRepository<Book> {
             return authors;
         }
 
-        var authorsPersisted = new HashSet<Author>();
-        var authorsNew = new HashSet<Author>();
+        var names = authors.stream()
+                .map(Author::getName)
+                .collect(Collectors.toSet());
+
+        var authorsPersisted = new HashSet<>(authorRepository.findByNames(names));
+        authorsFound.increment(authorsPersisted.size());
 
-        for (var author : authors) {
-            var authorFound = authorRepository.find("name", author.getName())
-                    .firstResultOptional()
-                    .orElse(null);
-            if (authorFound != null) {
-                authorsPersisted.add(authorFound);
-            } else {
-                authorsNew.add(author);
+        for (int attempt = 1; authorsPersisted.size() < names.size(); attempt++) {
+
+            if (attempt > AUTHORS_PERSIST_ATTEMPTS) {
+                throw new IllegalStateException("Failed to create the authors " + names);
             }
-        }
 
-        authorRepository.persist(authorsNew);
-        authorsPersisted.addAll(authorsNew);
+            var namesNew = new HashSet<>(names);
+            authorsPersisted.forEach(author -> namesNew.remove(author.getName()));
+
+            var created = authorRepository.insertMissing(namesNew);
+            authorsCreated.increment(created);
+            if (created < namesNew.size()) {
+                // Some of these authors were created by a concurrent transaction in the meantime
+                authorsConflicts.increment();
+            }
+
+            authorsPersisted.addAll(authorRepository.findByNames(namesNew));
+        }
 
         return authorsPersisted;
     }
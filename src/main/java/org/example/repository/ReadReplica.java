@@ -0,0 +1,100 @@
+package org.example.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.arc.Arc;
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.PersistenceException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+// Reads that can be served by the read replica (the 'replica' datasource) once 'books.replica.enabled' is set.
+// They run in a Hibernate session of their own over a replica connection, so the mappings and queries are the same.
+// Such a session reads the second-level cache but never puts into it, so replica lag doesn't leak into the shared cache.
+// A read that fails on the replica is repeated on the primary. A client that has written (see ReadYourWrites)
+// reads from the replica only once its last change has been replicated there.
+@ApplicationScoped
+public class ReadReplica {
+
+    @Inject
+    @DataSource("replica")
+    AgroalDataSource replica;
+    @Inject
+    SessionFactory sessionFactory;
+    @Inject
+    Session session;
+    @Inject
+    ReadYourWrites readYourWrites;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "books.replica.enabled", defaultValue = "false")
+    boolean enabled;
+
+    private Counter replicaReads;
+    private Counter primaryReads;
+    private Counter fallbacks;
+
+    @PostConstruct
+    void init() {
+        replicaReads = meterRegistry.counter("books.replica.reads", "datasource", "replica");
+        primaryReads = meterRegistry.counter("books.replica.reads", "datasource", "primary");
+        fallbacks = meterRegistry.counter("books.replica.fallbacks");
+    }
+
+    public <T> T read(Function<Session, T> query) {
+
+        if (enabled) {
+            var lastChange = getLastChange();
+            try (var connection = replica.getConnection()) {
+                if (lastChange == null || isReplicated(connection, lastChange)) {
+                    try (var replicaSession = sessionFactory.withOptions()
+                            .connection(connection)
+                            .autoJoinTransactions(false)
+                            .openSession()) {
+                        replicaSession.setDefaultReadOnly(true);
+                        replicaSession.setCacheMode(CacheMode.GET);
+                        var result = query.apply(replicaSession);
+                        replicaReads.increment();
+                        return result;
+                    }
+                }
+            } catch (SQLException | PersistenceException e) {
+                fallbacks.increment();
+                Log.warnf("Failed to read from the replica, reading from the primary: %s", e.getMessage());
+            }
+        }
+
+        primaryReads.increment();
+        return query.apply(session);
+    }
+
+    // Whether reads of the current request have to see the client's own changes
+    public boolean isReadingYourWrites() {
+        return enabled && getLastChange() != null;
+    }
+
+    private Long getLastChange() {
+        return Arc.container().requestContext().isActive() ? readYourWrites.getLastChange() : null;
+    }
+
+    private boolean isReplicated(Connection connection, long changeId) throws SQLException {
+        try (var statement = connection.prepareStatement("select 1 from book_changes where id = ?")) {
+            statement.setLong(1, changeId);
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
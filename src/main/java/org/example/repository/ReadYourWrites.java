@@ -0,0 +1,30 @@
+package org.example.repository;
+
+import jakarta.enterprise.context.RequestScoped;
+
+// The last change of the client of the current request (an id of the change log): the one it was given
+// in the 'books-read-after' cookie by an earlier write, or the one it has just written
+@RequestScoped
+public class ReadYourWrites {
+
+    private Long lastChange;
+    private boolean written;
+
+    public Long getLastChange() {
+        return lastChange;
+    }
+
+    public void setLastChange(Long lastChange) {
+        this.lastChange = lastChange;
+    }
+
+    // Whether the current request has changed books
+    public boolean isWritten() {
+        return written;
+    }
+
+    void written(long changeId) {
+        lastChange = lastChange == null ? changeId : Math.max(lastChange, changeId);
+        written = true;
+    }
+}
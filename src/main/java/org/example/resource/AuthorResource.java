@@ -0,0 +1,44 @@
+package org.example.resource;
+
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import org.example.dto.AuthorDto;
+import org.example.dto.BookDto;
+import org.example.dto.CursorPage;
+import org.example.service.AuthorService;
+
+// Both lists are keyset-paginated like 'GET /books': 'after' is the 'nextCursor' of the previous page
+@Path("/authors")
+public class AuthorResource {
+
+    @Inject
+    AuthorService authorService;
+
+    @GET
+    @Path("/")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public CursorPage<AuthorDto> getAll(@QueryParam("after") Long after, @QueryParam("limit") Integer limit) {
+        return authorService.getAll(after, limit);
+    }
+
+    @GET
+    @Path("/{id}/books")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public CursorPage<BookDto> getBooks(long id, @QueryParam("after") Long after, @QueryParam("limit") Integer limit) {
+        var page = authorService.getBooks(id, after, limit);
+        if (page == null) {
+            throw new NotFoundException(String.format("Author with id '%d' doesn't exist", id));
+        }
+        return page;
+    }
+}
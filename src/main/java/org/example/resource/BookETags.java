@@ -0,0 +1,82 @@
+package org.example.resource;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
+import org.example.dto.BookDto;
+import org.example.dto.CursorPage;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Objects;
+
+// Strong ETags: a book is identified by its id and version, and the JSON of a book depends on nothing else.
+// A page is identified by a SHA-256 digest of the ids and versions of its books and of its cursor: equal tags
+// mean equal representations unless the digest collides, which isn't a practical concern for SHA-256.
+final class BookETags {
+
+    private static final String ANY = "*";
+
+    private BookETags() {
+    }
+
+    static EntityTag of(Long id, Long version) {
+        return new EntityTag(id + "-" + version);
+    }
+
+    static EntityTag of(CursorPage<BookDto> page) {
+        var digest = sha256();
+        var buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        for (var book : page.items()) {
+            buffer.clear();
+            buffer.putLong(book.id()).putLong(book.version() == null ? -1 : book.version());
+            digest.update(buffer.array());
+        }
+        // Tells a page with a next cursor from the same books on the last page
+        buffer.clear();
+        buffer.putLong(page.nextCursor() == null ? 0 : 1).putLong(page.nextCursor() == null ? 0 : page.nextCursor());
+        digest.update(buffer.array());
+        return new EntityTag("page-" + page.items().size() + "-" + HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The version an 'If-Match' header expects the book to have, or null if any version will do.
+    // Tags of other books can never match, so a header without a tag of this book fails right away.
+    static Long expectedVersion(String ifMatch, long id) {
+
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.strip().equals(ANY)) {
+            return null;
+        }
+
+        var prefix = id + "-";
+
+        return Arrays.stream(ifMatch.split(","))
+                .map(String::strip)
+                .filter(tag -> tag.startsWith("\"") && tag.endsWith("\"") && tag.length() > 1)
+                .map(tag -> tag.substring(1, tag.length() - 1))
+                .filter(tag -> tag.startsWith(prefix))
+                .map(tag -> parseVersion(tag.substring(prefix.length())))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElseThrow(() -> new WebApplicationException(Response.Status.PRECONDITION_FAILED));
+    }
+
+    private static Long parseVersion(String version) {
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
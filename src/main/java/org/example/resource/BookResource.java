@@ -1,57 +1,406 @@
 package org.example.resource;
 
+import io.quarkus.vertx.http.Uncompressed;
+import io.smallrye.common.annotation.NonBlocking;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriBuilder;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import org.example.dto.BookChanges;
+import org.example.dto.BookDto;
+import org.example.dto.BookFacets;
+import org.example.dto.BookFilter;
+import org.example.dto.BookVersion;
+import org.example.dto.BulkResult;
+import org.example.dto.BulkUpdate;
+import org.example.dto.CacheStatistics;
+import org.example.dto.CursorPage;
+import org.example.dto.FullTextIndexStatistics;
+import org.example.dto.ImportSummary;
+import org.example.dto.IngestionStatus;
 import org.example.model.Book;
+import org.example.service.BookCache;
+import org.example.service.BookChangeStream;
+import org.example.service.BookExportService;
+import org.example.service.BookFacetCounters;
+import org.example.service.BookImportService;
+import org.example.service.BookIngestionQueue;
+import org.example.service.BookJsonCache;
 import org.example.service.BookService;
+import org.example.service.ExportFormat;
+import org.example.service.FullTextIndex;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
 
+// Blocking endpoints run on virtual threads (on worker threads if 'quarkus.virtual-threads.enabled' is false),
+// the ones that need the database behind the DatabaseBulkhead
 @Path("/books")
 public class BookResource {
 
+    private static final int INGESTION_RETRY_AFTER_SECONDS = 1;
+
     @Inject
     BookService booksService;
+    @Inject
+    BookImportService bookImportService;
+    @Inject
+    BookExportService bookExportService;
+    @Inject
+    BookCache bookCache;
+    @Inject
+    FullTextIndex fullTextIndex;
+    @Inject
+    NonBlockingReads nonBlockingReads;
+    @Inject
+    BookJsonCache bookJsonCache;
+    @Inject
+    BookIngestionQueue bookIngestionQueue;
+    @Inject
+    BookFacetCounters bookFacetCounters;
+    @Inject
+    BookChangeStream bookChangeStream;
+    @Inject
+    DatabaseBulkhead databaseBulkhead;
 
     @GET
     @Path("/")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Book> getAll() {
-        return booksService.getAll();
+    @RunOnVirtualThread
+    @DatabaseBound
+    public Response getAll(@QueryParam("after") Long after, @QueryParam("limit") Integer limit, @Context Request request) {
+        var page = booksService.getAll(after, limit);
+        var eTag = BookETags.of(page);
+        var notModified = request.evaluatePreconditions(eTag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(page)
+                .tag(eTag)
+                .build();
     }
 
+    @GET
+    @Path("/export")
+    @RunOnVirtualThread
+    public Response export(@QueryParam("format") @DefaultValue("ndjson") String format) {
+
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+
+        // The export holds its connection while the response is written, and takes its permit for that long
+        StreamingOutput output = outputStream -> {
+            databaseBulkhead.acquire();
+            try {
+                bookExportService.export(exportFormat, outputStream);
+            } finally {
+                databaseBulkhead.release();
+            }
+        };
+        return Response.ok(output, exportFormat.getMediaType())
+                .build();
+    }
+
+    // Delta sync: the books changed since the token of the previous request (see BookService#getChanges)
+    @GET
+    @Path("/changes")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public BookChanges getChanges(@QueryParam("since") Long since, @QueryParam("limit") Integer limit) {
+        return booksService.getChanges(since, limit);
+    }
+
+    @GET
+    @Path("/fulltext")
+    @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
+    public List<BookDto> searchFullText(@QueryParam("q") String query, @QueryParam("limit") @DefaultValue("10") int limit) {
+        return fullTextIndex.search(query, Math.min(Math.max(limit, 1), 100));
+    }
+
+    @GET
+    @Path("/fulltext/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
+    public FullTextIndexStatistics getFullTextIndexStatistics() {
+        return fullTextIndex.getStatistics();
+    }
+
+    // Served from counters in memory, without querying the database
+    @GET
+    @Path("/facets")
+    @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
+    public BookFacets getFacets(@QueryParam("limit") Integer limit) {
+        return bookFacetCounters.getFacets(limit);
+    }
+
+    // Server-sent events of the changes committed from now on (see BookChangeStream), with the sequence number as id
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public Multi<OutboundSseEvent> stream(@Context Sse sse) {
+        return bookChangeStream.subscribe()
+                .map(change -> sse.newEventBuilder()
+                        .id(String.valueOf(change.sequence()))
+                        .name(change.type())
+                        // Already JSON, written as it is
+                        .mediaType(MediaType.TEXT_PLAIN_TYPE)
+                        .data(change.data())
+                        .build());
+    }
+
+    @GET
+    @Path("/cache/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
+    public List<CacheStatistics> getCacheStatistics() {
+        return Stream.concat(bookCache.getStatistics().stream(), Stream.of(bookJsonCache.getStatistics()))
+                .toList();
+    }
+
+    // A single book is too small to be worth compressing
     @GET
     @Path("/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Book getById(long id) {
-        return booksService.getById(id);
+    @Uncompressed
+    public Uni<Response> getById(long id, @Context Request request, @Context HttpHeaders headers) {
+        return nonBlockingReads.read(
+                () -> {
+                    var book = booksService.getCachedById(id);
+                    return book == null ? null : conditionalResponse(book, request);
+                },
+                () -> {
+                    // A conditional request is checked against the version columns first,
+                    // so an unchanged book is neither loaded nor serialized
+                    if (isConditional(headers)) {
+                        var version = booksService.getVersion(id);
+                        if (version != null) {
+                            var notModified = evaluatePreconditions(version, request);
+                            if (notModified != null) {
+                                return notModified.build();
+                            }
+                        }
+                    }
+                    var book = booksService.getById(id);
+                    return book == null ? Response.noContent().build() : conditionalResponse(book, request);
+                });
     }
 
     @GET
     @Path("/title/{title}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Book getByTitle(String title) {
-        return booksService.getByTitle(title);
+    @Uncompressed
+    public Uni<Response> getByTitle(String title, @QueryParam("ignoreCase") boolean ignoreCase) {
+        return nonBlockingReads.read(
+                () -> {
+                    var book = booksService.getCachedByTitle(title, ignoreCase);
+                    return book == null ? null : jsonResponse(book);
+                },
+                () -> jsonResponse(ignoreCase ? booksService.getByTitleIgnoreCase(title) : booksService.getByTitle(title)));
     }
 
+    @GET
+    @Path("/search")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public List<BookDto> searchByTitlePrefix(@QueryParam("prefix") String prefix, @QueryParam("limit") Integer limit) {
+        try {
+            return booksService.searchByTitlePrefix(prefix, limit);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    // With 'async=true' the book is only queued (202 with the tracking id of the book, see BookIngestionQueue),
+    // and 429 tells the client to retry later when the queue is full
     @POST
     @Path("/")
     @Produces(MediaType.APPLICATION_JSON)
-    public Book create(Book book) {
-        return booksService.create(book);
+    @RunOnVirtualThread
+    public Response create(Book book, @QueryParam("async") boolean async) {
+
+        if (!async) {
+            databaseBulkhead.acquire();
+            try {
+                return Response.ok(booksService.create(book)).build();
+            } finally {
+                databaseBulkhead.release();
+            }
+        }
+
+        IngestionStatus status;
+        try {
+            status = bookIngestionQueue.submit(book);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            throw new WebApplicationException(e.getMessage(), Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, INGESTION_RETRY_AFTER_SECONDS)
+                    .build());
+        }
+
+        return Response.accepted(status)
+                .location(UriBuilder.fromResource(BookResource.class).path("ingestion/{trackingId}").build(status.trackingId()))
+                .build();
+    }
+
+    @GET
+    @Path("/ingestion/{trackingId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
+    public IngestionStatus getIngestionStatus(String trackingId) {
+        var status = bookIngestionQueue.getStatus(trackingId);
+        if (status == null) {
+            throw new NotFoundException(String.format("No queued book with tracking id '%s'", trackingId));
+        }
+        return status;
+    }
+
+    @POST
+    @Path("/bulk")
+    @Consumes({ "application/x-ndjson", MediaType.APPLICATION_JSON })
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public ImportSummary importBooks(InputStream input) throws IOException {
+        return bookImportService.importBooks(input);
     }
 
     @PATCH
     @Path("/{id}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Book update(long id, Book book) {
-        return booksService.update(id, book);
+    @RunOnVirtualThread
+    @DatabaseBound
+    public Response update(long id, Book book, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+
+        var expectedVersion = BookETags.expectedVersion(ifMatch, id);
+
+        Book bookUpdated;
+        try {
+            bookUpdated = booksService.update(id, book, expectedVersion);
+        } catch (OptimisticLockException e) {
+            // Either 'If-Match' named an older version, or another update was committed at the same time
+            throw new WebApplicationException(e.getMessage(),
+                    expectedVersion != null ? Response.Status.PRECONDITION_FAILED : Response.Status.CONFLICT);
+        }
+
+        return withValidators(Response.ok(bookUpdated), bookUpdated.getId(), bookUpdated.getVersion(), bookUpdated.getUpdatedAt())
+                .build();
+    }
+
+    // Bulk changes select the books by any combination of 'ids' (repeated or comma-separated), 'year' and 'author'
+    @PATCH
+    @Path("/")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public BulkResult updateAll(BulkUpdate update, @QueryParam("ids") List<String> ids, @QueryParam("year") Integer year,
+                                @QueryParam("author") String author) {
+        try {
+            return booksService.updateByFilter(filter(ids, year, author), update);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        } catch (PersistenceException e) {
+            // E.g. the new year gives two books the same title and year
+            throw new WebApplicationException(e.getMessage(), Response.Status.CONFLICT);
+        }
+    }
+
+    private BookFilter filter(List<String> ids, Integer year, String author) {
+        var idsParsed = ids.stream()
+                .flatMap(value -> Stream.of(value.split(",")))
+                .map(String::strip)
+                .filter(value -> !value.isEmpty())
+                .map(Long::valueOf)
+                .toList();
+        return new BookFilter(idsParsed, year, author);
+    }
+
+    private Response conditionalResponse(Book book, Request request) {
+        var notModified = evaluatePreconditions(new BookVersion(book.getId(), book.getVersion(), book.getUpdatedAt()), request);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return withValidators(Response.ok(bookJsonCache.getJson(book), MediaType.APPLICATION_JSON_TYPE), book.getId(), book.getVersion(), book.getUpdatedAt())
+                .build();
+    }
+
+    private Response jsonResponse(Book book) {
+        if (book == null) {
+            return Response.noContent().build();
+        }
+        return Response.ok(bookJsonCache.getJson(book), MediaType.APPLICATION_JSON_TYPE)
+                .build();
+    }
+
+    private Response.ResponseBuilder evaluatePreconditions(BookVersion version, Request request) {
+        var eTag = BookETags.of(version.id(), version.version());
+        var notModified = version.updatedAt() == null
+                ? request.evaluatePreconditions(eTag)
+                : request.evaluatePreconditions(lastModified(version.updatedAt()), eTag);
+        return notModified == null ? null : withValidators(notModified, version.id(), version.version(), version.updatedAt());
+    }
+
+    private Response.ResponseBuilder withValidators(Response.ResponseBuilder response, Long id, Long version, Instant updatedAt) {
+        return response
+                .tag(BookETags.of(id, version))
+                .lastModified(updatedAt == null ? null : lastModified(updatedAt));
+    }
+
+    // HTTP dates have a precision of seconds
+    private Date lastModified(Instant updatedAt) {
+        return Date.from(updatedAt.truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private boolean isConditional(HttpHeaders headers) {
+        return headers.getHeaderString(HttpHeaders.IF_NONE_MATCH) != null
+                || headers.getHeaderString(HttpHeaders.IF_MODIFIED_SINCE) != null;
     }
 
     @DELETE
     @Path("/{id}")
+    @RunOnVirtualThread
+    @DatabaseBound
     public void deleteById(long id) {
         booksService.deleteById(id);
     }
+
+    @DELETE
+    @Path("/")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RunOnVirtualThread
+    @DatabaseBound
+    public BulkResult deleteAll(@QueryParam("ids") List<String> ids, @QueryParam("year") Integer year, @QueryParam("author") String author) {
+        try {
+            return booksService.deleteByFilter(filter(ids, year, author));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package org.example.resource;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+@DatabaseBound
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class DatabaseBoundInterceptor {
+
+    @Inject
+    DatabaseBulkhead databaseBulkhead;
+
+    @AroundInvoke
+    Object aroundInvoke(InvocationContext context) throws Exception {
+        databaseBulkhead.acquire();
+        try {
+            return context.proceed();
+        } finally {
+            databaseBulkhead.release();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.resource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Virtual threads don't bound the number of concurrent requests: without a limit, the requests beyond the size of
+// the connection pool queue up in the pool and fail with 500 after its 'acquisition-timeout'. A request that needs
+// the database takes one of 'books.bulkhead.max-concurrent' permits first (the size of the pool by default), and
+// is rejected with 503 and 'Retry-After' when it can't get one within 'books.bulkhead.max-wait'.
+@ApplicationScoped
+public class DatabaseBulkhead {
+
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "books.bulkhead.max-concurrent", defaultValue = "50")
+    int maxConcurrent;
+    @ConfigProperty(name = "books.bulkhead.max-wait", defaultValue = "1S")
+    Duration maxWait;
+
+    private Semaphore permits;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        // Fair, so the requests that have waited longest get the permits that are given back
+        permits = new Semaphore(maxConcurrent, true);
+        rejected = meterRegistry.counter("books.bulkhead.rejected");
+    }
+
+    public void acquire() {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new WebApplicationException("Too many concurrent requests, retry later",
+                    Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                            .build());
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+}
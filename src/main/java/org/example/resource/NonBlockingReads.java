@@ -0,0 +1,43 @@
+package org.example.resource;
+
+import io.smallrye.mutiny.Uni;
+import io.quarkus.virtual.threads.VirtualThreads;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+// Reads that are answered from memory complete right on the I/O thread,
+// only the ones that have to go to the database are moved to a virtual thread (behind the DatabaseBulkhead).
+@ApplicationScoped
+public class NonBlockingReads {
+
+    @ConfigProperty(name = "books.reactive.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @Inject
+    @VirtualThreads
+    ExecutorService virtualThreads;
+    @Inject
+    DatabaseBulkhead databaseBulkhead;
+
+    public <T> Uni<T> read(Supplier<T> fromMemory, Supplier<T> fromDatabase) {
+        if (enabled) {
+            var value = fromMemory.get();
+            if (value != null) {
+                return Uni.createFrom().item(value);
+            }
+        }
+        return Uni.createFrom().item(() -> {
+                    databaseBulkhead.acquire();
+                    try {
+                        return fromDatabase.get();
+                    } finally {
+                        databaseBulkhead.release();
+                    }
+                })
+                .runSubscriptionOn(virtualThreads);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.resource;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.NewCookie;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.repository.ReadYourWrites;
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+import org.jboss.resteasy.reactive.server.ServerResponseFilter;
+
+import java.time.Duration;
+
+// Read-your-writes per client (see ReadReplica): a successful write gives the client its last change in a cookie,
+// and its reads that bring the cookie back wait for that change to reach the replica (or go to the primary).
+// The cookie lasts 'books.replica.max-lag', after which any replica is expected to have caught up.
+public class ReadYourWritesFilter {
+
+    static final String COOKIE = "books-read-after";
+
+    @Inject
+    ReadYourWrites readYourWrites;
+
+    @ConfigProperty(name = "books.replica.enabled", defaultValue = "false")
+    boolean replicaEnabled;
+    @ConfigProperty(name = "books.replica.read-your-writes", defaultValue = "true")
+    boolean enabled;
+    @ConfigProperty(name = "books.replica.max-lag", defaultValue = "1S")
+    Duration maxLag;
+
+    @ServerRequestFilter
+    public void readLastChange(ContainerRequestContext request) {
+        var cookie = request.getCookies().get(COOKIE);
+        if (replicaEnabled && enabled && cookie != null) {
+            try {
+                readYourWrites.setLastChange(Long.valueOf(cookie.getValue()));
+            } catch (NumberFormatException e) {
+                // Not one of ours, ignored
+            }
+        }
+    }
+
+    @ServerResponseFilter
+    public void writeLastChange(ContainerResponseContext response) {
+        if (replicaEnabled && enabled && readYourWrites.isWritten() && response.getStatus() < 400) {
+            var cookie = new NewCookie.Builder(COOKIE)
+                    .value(String.valueOf(readYourWrites.getLastChange()))
+                    .path("/")
+                    .maxAge((int) Math.max(maxLag.toSeconds(), 1))
+                    .httpOnly(true)
+                    .build();
+            response.getHeaders().add(HttpHeaders.SET_COOKIE, cookie);
+        }
+    }
+}
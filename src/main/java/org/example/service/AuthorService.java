@@ -0,0 +1,36 @@
+package org.example.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.example.dto.AuthorDto;
+import org.example.dto.BookDto;
+import org.example.dto.CursorPage;
+import org.example.repository.AuthorRepository;
+import org.example.repository.BookRepository;
+
+@ApplicationScoped
+public class AuthorService {
+
+    @Inject
+    AuthorRepository authorRepository;
+    @Inject
+    BookRepository bookRepository;
+    @Inject
+    PageSizes pageSizes;
+
+    public CursorPage<AuthorDto> getAll(Long after, Integer limit) {
+        var pageSize = pageSizes.of(limit);
+        var authors = authorRepository.findPage(after, pageSize + 1);
+        return CursorPage.of(authors, pageSize, AuthorDto::id);
+    }
+
+    // Null if there is no such author
+    public CursorPage<BookDto> getBooks(long authorId, Long after, Integer limit) {
+        var pageSize = pageSizes.of(limit);
+        var books = bookRepository.findPageByAuthor(authorId, after, pageSize + 1);
+        if (books.isEmpty() && authorRepository.findById(authorId) == null) {
+            return null;
+        }
+        return CursorPage.of(books, pageSize, BookDto::id);
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.CacheStatistics;
+import org.example.event.BookEvent;
+import org.example.model.Book;
+import org.example.repository.ReadReplica;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+@ApplicationScoped
+public class BookCache {
+
+    @ConfigProperty(name = "books.cache.enabled", defaultValue = "true")
+    boolean enabled;
+    @ConfigProperty(name = "books.cache.maximum-size", defaultValue = "10000")
+    long maximumSize;
+    @ConfigProperty(name = "books.cache.expire-after-write", defaultValue = "10M")
+    Duration expireAfterWrite;
+    @ConfigProperty(name = "books.single-flight.timeout", defaultValue = "2S")
+    Duration singleFlightTimeout;
+
+    @ConfigProperty(name = "books.replica.enabled", defaultValue = "false")
+    boolean replicaEnabled;
+    @ConfigProperty(name = "books.replica.max-lag", defaultValue = "1S")
+    Duration replicaMaxLag;
+
+    @Inject
+    MeterRegistry meterRegistry;
+    @Inject
+    ReadReplica readReplica;
+
+    private Cache<Long, Book> booksById;
+    private Cache<String, Book> booksByTitle;
+    private Cache<String, Book> booksByNormalizedTitle;
+    private SingleFlight<Long, Book> loadsById;
+    private SingleFlight<String, Book> loadsByTitle;
+    private SingleFlight<String, Book> loadsByNormalizedTitle;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        booksById = newCache("books-by-id");
+        booksByTitle = newCache("books-by-title");
+        booksByNormalizedTitle = newCache("books-by-normalized-title");
+        loadsById = new SingleFlight<>("books-by-id", singleFlightTimeout, meterRegistry);
+        loadsByTitle = new SingleFlight<>("books-by-title", singleFlightTimeout, meterRegistry);
+        loadsByNormalizedTitle = new SingleFlight<>("books-by-normalized-title", singleFlightTimeout, meterRegistry);
+    }
+
+    private <K> Cache<K, Book> newCache(String name) {
+        Cache<K, Book> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    // Missing books (null) are not cached.
+    // Concurrent misses of the same book share one load (also with 'books.cache.enabled=false').
+    // A client that has just written reads past the cache, which may still hold a book read from a lagging replica,
+    // and doesn't join loads of others, which may read from the replica as well.
+    public Book getById(Long id, Function<Long, Book> loader) {
+        return get(booksById, loadsById, id, loader);
+    }
+
+    public Book getByTitle(String title, Function<String, Book> loader) {
+        return get(booksByTitle, loadsByTitle, title, loader);
+    }
+
+    public Book getByNormalizedTitle(String titleNormalized, Function<String, Book> loader) {
+        return get(booksByNormalizedTitle, loadsByNormalizedTitle, titleNormalized, loader);
+    }
+
+    private <K> Book get(Cache<K, Book> cache, SingleFlight<K, Book> loads, K key, Function<K, Book> loader) {
+        if (readReplica.isReadingYourWrites()) {
+            return loader.apply(key);
+        }
+        if (!enabled) {
+            return loads.load(key, loader);
+        }
+        var book = cache.getIfPresent(key);
+        return book != null ? book : loads.load(key, k -> load(cache, k, loader));
+    }
+
+    // Books are loaded outside of the cache, as a load inside of it would hold a lock of the cache (and pin
+    // its virtual thread) for as long as the query runs. A book loaded while books were being invalidated
+    // may be the old state, so it's taken out again.
+    private <K> Book load(Cache<K, Book> cache, K key, Function<K, Book> loader) {
+        var invalidationsBefore = invalidations.get();
+        var book = loader.apply(key);
+        if (book != null) {
+            cache.put(key, book);
+            if (invalidations.get() != invalidationsBefore) {
+                cache.invalidate(key);
+            }
+        }
+        return book;
+    }
+
+    // Lookups that never load, so they can be served without blocking (null if the book isn't cached)
+    public Book getCachedById(Long id) {
+        return readReplica.isReadingYourWrites() || !enabled ? null : booksById.getIfPresent(id);
+    }
+
+    public Book getCachedByTitle(String title) {
+        return readReplica.isReadingYourWrites() || !enabled ? null : booksByTitle.getIfPresent(title);
+    }
+
+    public Book getCachedByNormalizedTitle(String titleNormalized) {
+        return readReplica.isReadingYourWrites() || !enabled ? null : booksByNormalizedTitle.getIfPresent(titleNormalized);
+    }
+
+    // Invalidation happens only after the commit, so a concurrent read can't put the old state back into the cache.
+    // A load that is still running when a book is invalidated doesn't keep its result in the cache (see load()).
+    // A replica may not have the change yet, though, so with reads from the replica the books are invalidated
+    // once more after 'books.replica.max-lag'.
+    // Loads already running may have read the old state, so lookups from now on don't join them.
+    void onBookEvent(@Observes(during = TransactionPhase.AFTER_SUCCESS) BookEvent event) {
+        invalidate(event);
+        if (replicaEnabled) {
+            CompletableFuture.delayedExecutor(replicaMaxLag.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> invalidate(event));
+        }
+    }
+
+    private void invalidate(BookEvent event) {
+
+        invalidations.incrementAndGet();
+
+        if (event.type() == BookEvent.Type.CLEARED) {
+            booksById.invalidateAll();
+            booksByTitle.invalidateAll();
+            booksByNormalizedTitle.invalidateAll();
+            loadsById.forgetAll();
+            loadsByTitle.forgetAll();
+            loadsByNormalizedTitle.forgetAll();
+            return;
+        }
+
+        Stream.of(event.book(), event.previous())
+                .filter(Objects::nonNull)
+                .forEach(book -> {
+                    booksById.invalidate(book.id());
+                    booksByTitle.invalidate(book.title());
+                    booksByNormalizedTitle.invalidate(Book.normalizeTitle(book.title()));
+                    loadsById.forget(book.id());
+                    loadsByTitle.forget(book.title());
+                    loadsByNormalizedTitle.forget(Book.normalizeTitle(book.title()));
+                });
+    }
+
+    public List<CacheStatistics> getStatistics() {
+        return List.of(
+                statistics("books-by-id", booksById),
+                statistics("books-by-title", booksByTitle),
+                statistics("books-by-normalized-title", booksByNormalizedTitle)
+        );
+    }
+
+    private CacheStatistics statistics(String name, Cache<?, ?> cache) {
+        var stats = cache.stats();
+        return new CacheStatistics(name, cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+}
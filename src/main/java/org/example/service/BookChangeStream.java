@@ -0,0 +1,126 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.operators.multi.processors.BroadcastProcessor;
+import io.smallrye.mutiny.subscription.BackPressureFailure;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookChange;
+import org.example.event.BookEvent;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Committed changes of books pushed to the subscribers of 'GET /books/stream'.
+// A write only offers its change to a bounded queue ('books.stream.dispatch-capacity'; changes are dropped when it's full),
+// and a single dispatcher encodes it and hands it to every subscriber. Each subscriber has its own buffer
+// of 'books.stream.buffer-size' changes: a subscriber that falls further behind gets an 'overflow' change
+// and its stream ends, so it has to reload what it needs and subscribe again.
+@ApplicationScoped
+public class BookChangeStream {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    @Inject
+    ObjectMapper objectMapper;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "books.stream.dispatch-capacity", defaultValue = "10000")
+    int dispatchCapacity;
+    @ConfigProperty(name = "books.stream.buffer-size", defaultValue = "256")
+    int bufferSize;
+
+    private final BroadcastProcessor<BookChange> processor = BroadcastProcessor.create();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private BlockingQueue<Pending> queue;
+    private Counter dropped;
+    private Counter overflows;
+    private volatile boolean running;
+
+    private record Pending(long sequence, BookEvent event) {
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        queue = new ArrayBlockingQueue<>(dispatchCapacity);
+        meterRegistry.gauge("books.stream.subscribers", subscribers);
+        dropped = meterRegistry.counter("books.stream.dropped");
+        overflows = meterRegistry.counter("books.stream.overflows");
+
+        running = true;
+        // A platform thread: handing a change to thousands of subscribers is CPU-bound work that never blocks,
+        // so on a virtual thread it would hold a carrier thread away from the requests for the whole fan-out
+        Thread.ofPlatform().name("book-change-dispatcher").daemon().start(this::dispatch);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        running = false;
+    }
+
+    void onBookEvent(@Observes(during = TransactionPhase.AFTER_SUCCESS) BookEvent event) {
+        var pending = new Pending(sequence.incrementAndGet(), event);
+        if (queue == null || !queue.offer(pending)) {
+            dropped.increment();
+        }
+    }
+
+    // Changes committed from now on
+    public Multi<BookChange> subscribe() {
+        return processor
+                .onSubscription().invoke(subscribers::incrementAndGet)
+                .onOverflow().buffer(bufferSize)
+                .onFailure(BackPressureFailure.class).recoverWithItem(failure -> {
+                    overflows.increment();
+                    return BookChange.overflow(sequence.get());
+                })
+                .onTermination().invoke(subscribers::decrementAndGet);
+    }
+
+    public int getSubscribers() {
+        return subscribers.get();
+    }
+
+    private void dispatch() {
+        try {
+            while (running) {
+                var pending = queue.poll(POLL_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS);
+                if (pending != null) {
+                    processor.onNext(encode(pending));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            processor.onComplete();
+        }
+    }
+
+    private BookChange encode(Pending pending) {
+        var event = pending.event();
+        var type = event.type().name().toLowerCase(Locale.ROOT);
+        var book = event.type() == BookEvent.Type.DELETED ? event.previous() : event.book();
+        try {
+            return new BookChange(pending.sequence(), type, objectMapper.writeValueAsString(book));
+        } catch (JsonProcessingException e) {
+            Log.errorf(e, "Failed to encode the change %d of a book", pending.sequence());
+            return new BookChange(pending.sequence(), type, "null");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.example.dto.BookDto;
+import org.example.model.Book;
+import org.example.repository.BookRepository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Creates a chunk of books in one transaction (see BookRepository#createAll), used by the import and the ingestion queue.
+// If the chunk fails, it has been rolled back as a whole, so its books are retried one by one to find out which of them fail.
+@ApplicationScoped
+public class BookChunkWriter {
+
+    @Inject
+    BookRepository bookRepository;
+
+    // Calls 'created' for every created book, and 'failed' with the message of the root cause for every book that failed
+    public <K> void createChunk(Map<K, BookDto> chunk, BiConsumer<K, Book> created, BiConsumer<K, String> failed) {
+
+        var books = new LinkedHashMap<K, Book>();
+        chunk.forEach((key, book) -> books.put(key, book.toBook()));
+
+        try {
+            bookRepository.createAll(List.copyOf(books.values()));
+        } catch (RuntimeException e) {
+            retryOneByOne(chunk, created, failed);
+            return;
+        }
+        books.forEach(created);
+    }
+
+    // A book of the failed chunk may already have an id, so every book is created again from its DTO
+    private <K> void retryOneByOne(Map<K, BookDto> chunk, BiConsumer<K, Book> created, BiConsumer<K, String> failed) {
+        chunk.forEach((key, record) -> {
+            var book = record.toBook();
+            try {
+                bookRepository.createAll(List.of(book));
+            } catch (RuntimeException e) {
+                failed.accept(key, rootMessage(e));
+                return;
+            }
+            created.accept(key, book);
+        });
+    }
+
+    private static String rootMessage(Throwable e) {
+        var cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.repository.BookRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+@ApplicationScoped
+public class BookExportService {
+
+    private static final String CSV_HEADER = "id,title,year,authors";
+    private static final String CSV_AUTHORS_SEPARATOR = ";";
+
+    @Inject
+    BookRepository bookRepository;
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "books.export.fetch-size", defaultValue = "500")
+    int fetchSize;
+
+    // Every book is written to the output as soon as it is read.
+    // Writes block while the client doesn't keep up, which in turn holds back reading from the database.
+    public void export(ExportFormat format, OutputStream output) throws IOException {
+
+        var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        try {
+            bookRepository.scrollAll(fetchSize, book -> {
+                try {
+                    write(format, book, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writer.flush();
+    }
+
+    private void write(ExportFormat format, BookDto book, Writer writer) throws IOException {
+        switch (format) {
+            case NDJSON -> writer.write(objectMapper.writeValueAsString(book));
+            case CSV -> {
+                writer.write(String.valueOf(book.id()));
+                writer.write(',');
+                writer.write(csvField(book.title()));
+                writer.write(',');
+                writer.write(book.year() == null ? "" : String.valueOf(book.year()));
+                writer.write(',');
+                writer.write(csvField(String.join(CSV_AUTHORS_SEPARATOR, book.authors())));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private String csvField(String value) {
+        value = Objects.requireNonNullElse(value, "");
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
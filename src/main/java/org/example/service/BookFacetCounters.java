@@ -0,0 +1,253 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.dto.BookFacets;
+import org.example.event.BookEvent;
+import org.example.repository.BookRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+// Numbers of books per year and per author, kept in memory and changed by every committed write (see BookEvent),
+// so a query never touches the catalog. Writes of other instances, and writes that bypass BookRepository,
+// are caught up by the periodic reconciliation with the database ('books.facets.reconciliation-interval').
+// The events of a transaction are counted when it completes. A transaction of this instance holds the read side of
+// 'cut' from right before its commit until its events are counted, and the reconciliation counts the database under
+// the write side: every transaction is then either committed and counted, or neither, so the recount replaces the
+// counters as they are, whatever the load.
+// Queries are answered from a ranking of the largest counts, built again on the first query after a change.
+@ApplicationScoped
+public class BookFacetCounters {
+
+    private static final String PENDING_EVENTS = BookFacetCounters.class.getName() + ".pendingEvents";
+    // Entries that drop to zero are removed, so the maps only hold the facets that have books
+    private static final BiFunction<Long, Long, Long> SUM_OR_REMOVE = (count, delta) -> count + delta == 0 ? null : count + delta;
+    private static final Comparator<BookFacets.YearCount> YEARS_RANKED = Comparator.comparingLong(BookFacets.YearCount::books).reversed()
+            .thenComparingInt(BookFacets.YearCount::year);
+    private static final Comparator<BookFacets.AuthorCount> AUTHORS_RANKED = Comparator.comparingLong(BookFacets.AuthorCount::books).reversed()
+            .thenComparing(BookFacets.AuthorCount::author);
+
+    @Inject
+    BookRepository bookRepository;
+    @Inject
+    MeterRegistry meterRegistry;
+    @Inject
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @ConfigProperty(name = "books.facets.default-limit", defaultValue = "20")
+    int defaultLimit;
+    @ConfigProperty(name = "books.facets.max-limit", defaultValue = "1000")
+    int maxLimit;
+
+    private volatile Counts counts = new Counts();
+    // Stamped, as the read side is released by the thread that completes the transaction, not always the one that
+    // committed it (e.g. the one that rolls it back on timeout)
+    private final StampedLock cut = new StampedLock();
+    // Incremented by every change of the counts, to tell whether the ranking is still current
+    private final AtomicLong changes = new AtomicLong();
+    private volatile Ranking ranking = new Ranking(-1, 0, List.of(), List.of());
+    // Concurrent queries that find the ranking out of date wait for one of them to build it
+    private final ReentrantLock rankingLock = new ReentrantLock();
+    private volatile boolean reconciledOnce;
+    private Counter drift;
+
+    private record Counts(AtomicLong books, Map<Integer, Long> byYear, Map<String, Long> byAuthor) {
+
+        Counts() {
+            this(new AtomicLong(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+
+    // The largest 'books.facets.max-limit' counts of each facet, largest first
+    private record Ranking(long changes, long books, List<BookFacets.YearCount> years, List<BookFacets.AuthorCount> authors) {
+    }
+
+    @PostConstruct
+    void init() {
+        drift = meterRegistry.counter("books.facets.drift");
+    }
+
+    // Called inside the transaction of the change, the events are counted if it commits
+    @SuppressWarnings("unchecked")
+    void onBookEvent(@Observes BookEvent event) {
+
+        if (transactionSynchronizationRegistry.getTransactionKey() == null) {
+            var stamp = cut.readLock();
+            try {
+                count(List.of(event));
+            } finally {
+                cut.unlockRead(stamp);
+            }
+            return;
+        }
+
+        var events = (List<BookEvent>) transactionSynchronizationRegistry.getResource(PENDING_EVENTS);
+        if (events == null) {
+            var eventsOfTransaction = new ArrayList<BookEvent>();
+            transactionSynchronizationRegistry.putResource(PENDING_EVENTS, eventsOfTransaction);
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+
+                private long stamp;
+
+                @Override
+                public void beforeCompletion() {
+                    stamp = cut.readLock();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    try {
+                        if (status == Status.STATUS_COMMITTED) {
+                            count(eventsOfTransaction);
+                        }
+                    } finally {
+                        // Not taken if the transaction was rolled back before its commit
+                        if (stamp != 0) {
+                            cut.unlockRead(stamp);
+                        }
+                    }
+                }
+            });
+            events = eventsOfTransaction;
+        }
+        events.add(event);
+    }
+
+    private void count(List<BookEvent> events) {
+        for (var event : events) {
+            var current = counts;
+            switch (event.type()) {
+                case CREATED -> add(current, event.book(), 1);
+                case UPDATED -> {
+                    add(current, event.previous(), -1);
+                    add(current, event.book(), 1);
+                }
+                case DELETED -> add(current, event.previous(), -1);
+                case CLEARED -> counts = new Counts();
+            }
+        }
+        changes.incrementAndGet();
+    }
+
+    private void add(Counts counts, BookDto book, long delta) {
+        counts.books().addAndGet(delta);
+        if (book.year() != null) {
+            counts.byYear().merge(book.year(), delta, SUM_OR_REMOVE);
+        }
+        new HashSet<>(book.authors()).forEach(author -> counts.byAuthor().merge(author, delta, SUM_OR_REMOVE));
+    }
+
+    // The largest 'limit' counts of each facet
+    public BookFacets getFacets(Integer limit) {
+
+        var facetLimit = limit == null || limit < 1 ? defaultLimit : Math.min(limit, maxLimit);
+        var current = currentRanking();
+
+        return new BookFacets(current.books(),
+                current.years().subList(0, Math.min(facetLimit, current.years().size())),
+                current.authors().subList(0, Math.min(facetLimit, current.authors().size())));
+    }
+
+    private Ranking currentRanking() {
+        var current = ranking;
+        if (current.changes() == changes.get()) {
+            return current;
+        }
+        rankingLock.lock();
+        try {
+            current = ranking;
+            var changesNow = changes.get();
+            if (current.changes() != changesNow) {
+                // Changes counted while the ranking is built make it out of date right away, and are ranked next time
+                var countsNow = counts;
+                current = new Ranking(changesNow, countsNow.books().get(),
+                        largest(countsNow.byYear(), BookFacets.YearCount::new, YEARS_RANKED),
+                        largest(countsNow.byAuthor(), BookFacets.AuthorCount::new, AUTHORS_RANKED));
+                ranking = current;
+            }
+            return current;
+        } finally {
+            rankingLock.unlock();
+        }
+    }
+
+    // The 'max-limit' largest counts, with a heap of that size rather than a sort of every count
+    private <K, C> List<C> largest(Map<K, Long> counts, BiFunction<K, Long, C> facetCount, Comparator<C> ranked) {
+        var heap = new PriorityQueue<C>(ranked.reversed());
+        counts.forEach((key, count) -> {
+            if (count > 0) {
+                heap.add(facetCount.apply(key, count));
+                if (heap.size() > maxLimit) {
+                    heap.poll();
+                }
+            }
+        });
+        var largest = new ArrayList<>(heap);
+        largest.sort(ranked);
+        return List.copyOf(largest);
+    }
+
+    // Also runs right after the start, which builds the counters in the first place
+    @Scheduled(every = "${books.facets.reconciliation-interval:10M}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    @Transactional
+    public void reconcile() {
+
+        // The connection is taken before the cut, as the commits that wait for it hold theirs
+        bookRepository.getEntityManager().createNativeQuery("select 1").getSingleResult();
+
+        var stamp = cut.writeLock();
+        try {
+            var reconciled = new Counts();
+            reconciled.books().set(bookRepository.countFacets(reconciled.byYear(), reconciled.byAuthor()));
+
+            // The first reconciliation builds the counters, there's nothing to correct yet
+            var corrected = reconciledOnce ? difference(counts, reconciled) : 0;
+            counts = reconciled;
+            changes.incrementAndGet();
+            reconciledOnce = true;
+
+            if (corrected > 0) {
+                drift.increment(corrected);
+                Log.infof("Corrected %d book facet counts", corrected);
+            }
+        } finally {
+            cut.unlockWrite(stamp);
+        }
+    }
+
+    private long difference(Counts counts, Counts reconciled) {
+        return (counts.books().get() != reconciled.books().get() ? 1 : 0)
+                + difference(counts.byYear(), reconciled.byYear())
+                + difference(counts.byAuthor(), reconciled.byAuthor());
+    }
+
+    private <K> long difference(Map<K, Long> counts, Map<K, Long> reconciled) {
+        var keys = new HashSet<>(counts.keySet());
+        keys.addAll(reconciled.keySet());
+        return keys.stream()
+                .filter(key -> !counts.getOrDefault(key, 0L).equals(reconciled.getOrDefault(key, 0L)))
+                .count();
+    }
+}
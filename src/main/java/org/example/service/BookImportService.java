@@ -0,0 +1,104 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.dto.ImportSummary;
+import org.example.dto.ImportSummary.ImportError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@ApplicationScoped
+public class BookImportService {
+
+    @Inject
+    BookChunkWriter bookChunkWriter;
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "books.import.chunk-size", defaultValue = "500")
+    int chunkSize;
+    @ConfigProperty(name = "books.import.max-reported-errors", defaultValue = "1000")
+    int maxReportedErrors;
+
+    // Accepts both NDJSON (whitespace-separated objects) and a JSON array of objects.
+    // Records are read one by one from the stream and committed in chunks of 'books.import.chunk-size'.
+    public ImportSummary importBooks(InputStream input) throws IOException {
+
+        var result = new ImportResult();
+        var chunk = new LinkedHashMap<Long, BookDto>();
+
+        try (MappingIterator<BookDto> records = objectMapper.readerFor(BookDto.class).readValues(input)) {
+
+            for (long index = 0; ; index++) {
+
+                BookDto record;
+                try {
+                    if (!records.hasNextValue()) {
+                        break;
+                    }
+                    result.received++;
+                    record = records.nextValue();
+                } catch (JsonMappingException e) {
+                    // The record is well-formed JSON but doesn't fit a book, the next one can still be read
+                    result.failed(index, e.getOriginalMessage());
+                    continue;
+                } catch (JsonProcessingException e) {
+                    // Malformed JSON, the rest of the stream can't be read reliably
+                    result.failed(index, e.getOriginalMessage());
+                    break;
+                }
+
+                if (record.title() == null || record.title().isBlank()) {
+                    result.failed(index, "Title is required");
+                    continue;
+                }
+
+                chunk.put(index, record);
+                if (chunk.size() >= chunkSize) {
+                    createChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            createChunk(chunk, result);
+        }
+
+        return result.toSummary();
+    }
+
+    private void createChunk(Map<Long, BookDto> chunk, ImportResult result) {
+        bookChunkWriter.createChunk(chunk, (index, book) -> result.created++, result::failed);
+    }
+
+    private class ImportResult {
+
+        private long received;
+        private long created;
+        private long failed;
+        private final List<ImportError> errors = new ArrayList<>();
+
+        private void failed(long index, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ImportError(index, message));
+            }
+        }
+
+        private ImportSummary toSummary() {
+            return new ImportSummary(received, created, failed, errors);
+        }
+    }
+}
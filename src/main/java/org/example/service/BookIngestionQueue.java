@@ -0,0 +1,175 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.dto.IngestionStatus;
+import org.example.model.Book;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Write-behind creation of books ('POST /books?async=true').
+// A single writer takes the queued books in batches of up to 'books.ingestion.batch-size', waiting at most
+// 'books.ingestion.max-delay' after the first one for more to come, and creates every batch in one transaction
+// (one commit for the whole batch, with its authors resolved once, see BookRepository#createAll).
+@ApplicationScoped
+public class BookIngestionQueue {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    @Inject
+    BookChunkWriter bookChunkWriter;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "books.ingestion.capacity", defaultValue = "10000")
+    int capacity;
+    @ConfigProperty(name = "books.ingestion.batch-size", defaultValue = "500")
+    int batchSize;
+    @ConfigProperty(name = "books.ingestion.max-delay", defaultValue = "20ms")
+    Duration maxDelay;
+    @ConfigProperty(name = "books.ingestion.shutdown-timeout", defaultValue = "30S")
+    Duration shutdownTimeout;
+    @ConfigProperty(name = "books.ingestion.status.maximum-size", defaultValue = "100000")
+    long statusMaximumSize;
+    @ConfigProperty(name = "books.ingestion.status.expire-after-write", defaultValue = "1H")
+    Duration statusExpireAfterWrite;
+
+    private BlockingQueue<Pending> queue;
+    private Cache<String, IngestionStatus> statuses;
+    private DistributionSummary batchSizes;
+    private Thread writer;
+    private volatile boolean accepting;
+    // No book is queued after the writer has seen the queue stopped and empty
+    private final ReentrantLock acceptingLock = new ReentrantLock();
+
+    private record Pending(String trackingId, BookDto book) {
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        queue = new ArrayBlockingQueue<>(capacity);
+        statuses = Caffeine.newBuilder()
+                .maximumSize(statusMaximumSize)
+                .expireAfterWrite(statusExpireAfterWrite)
+                .build();
+        meterRegistry.gaugeCollectionSize("books.ingestion.queue.size", Tags.empty(), queue);
+        batchSizes = meterRegistry.summary("books.ingestion.batch.size");
+
+        accepting = true;
+        writer = Thread.ofVirtual().name("book-ingestion-writer").start(this::write);
+    }
+
+    // Books still queued at shutdown are created before the application stops (up to 'books.ingestion.shutdown-timeout')
+    void onStop(@Observes ShutdownEvent event) throws InterruptedException {
+        acceptingLock.lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptingLock.unlock();
+        }
+        if (writer != null && !writer.join(shutdownTimeout)) {
+            Log.warnf("%d queued books were not created before the shutdown", queue.size());
+        }
+    }
+
+    // Throws RejectedExecutionException if the queue is full (or the application is stopping)
+    public IngestionStatus submit(Book book) {
+
+        if (book.getTitle() == null || book.getTitle().isBlank()) {
+            throw new IllegalArgumentException("Title is required");
+        }
+        if (book.getAuthors() == null) {
+            book.setAuthors(new HashSet<>());
+        }
+
+        var status = IngestionStatus.queued(UUID.randomUUID().toString());
+        statuses.put(status.trackingId(), status);
+        var pending = new Pending(status.trackingId(), BookDto.of(book));
+
+        acceptingLock.lock();
+        try {
+            if (!accepting || !queue.offer(pending)) {
+                statuses.invalidate(status.trackingId());
+                throw new RejectedExecutionException(accepting ? "The ingestion queue is full" : "The application is stopping");
+            }
+        } finally {
+            acceptingLock.unlock();
+        }
+        return status;
+    }
+
+    // Null if the tracking id is unknown or its status has expired
+    public IngestionStatus getStatus(String trackingId) {
+        return statuses.getIfPresent(trackingId);
+    }
+
+    private void write() {
+
+        var batch = new ArrayList<Pending>(batchSize);
+
+        while (accepting || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(POLL_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                var deadline = System.nanoTime() + maxDelay.toNanos();
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    var next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                createBatch(batch);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                Log.error("Failed to create a batch of queued books", e);
+                batch.forEach(pending -> statuses.put(pending.trackingId(), IngestionStatus.failed(pending.trackingId(), e.getMessage())));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void createBatch(List<Pending> batch) {
+
+        batchSizes.record(batch.size());
+
+        var books = new LinkedHashMap<String, BookDto>();
+        batch.forEach(pending -> books.put(pending.trackingId(), pending.book()));
+
+        bookChunkWriter.createChunk(books,
+                (trackingId, book) -> statuses.put(trackingId, IngestionStatus.created(trackingId, book.getId())),
+                (trackingId, message) -> statuses.put(trackingId, IngestionStatus.failed(trackingId, message)));
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.CacheStatistics;
+import org.example.event.BookEvent;
+import org.example.model.Book;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+// The JSON of a book, encoded once per version of the book, so a response is just a copy of these bytes.
+// An entry is only used for the version it was encoded from, a newer book is always encoded again.
+@ApplicationScoped
+public class BookJsonCache {
+
+    private static final String NAME = "books-json";
+
+    @ConfigProperty(name = "books.cache.maximum-size", defaultValue = "10000")
+    long maximumSize;
+    @ConfigProperty(name = "books.cache.expire-after-write", defaultValue = "10M")
+    Duration expireAfterWrite;
+
+    @Inject
+    ObjectMapper objectMapper;
+    @Inject
+    MeterRegistry meterRegistry;
+
+    private Cache<Long, EncodedBook> booksJson;
+
+    private record EncodedBook(Long version, byte[] json) {
+    }
+
+    @PostConstruct
+    void init() {
+        booksJson = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, booksJson, NAME);
+    }
+
+    // The returned array is shared, it must not be modified
+    public byte[] getJson(Book book) {
+
+        var encoded = booksJson.getIfPresent(book.getId());
+        if (encoded != null && Objects.equals(encoded.version(), book.getVersion())) {
+            return encoded.json();
+        }
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(book);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        booksJson.put(book.getId(), new EncodedBook(book.getVersion(), json));
+        return json;
+    }
+
+    void onBookEvent(@Observes(during = TransactionPhase.AFTER_SUCCESS) BookEvent event) {
+
+        if (event.type() == BookEvent.Type.CLEARED) {
+            booksJson.invalidateAll();
+            return;
+        }
+
+        Stream.of(event.book(), event.previous())
+                .filter(Objects::nonNull)
+                .forEach(book -> booksJson.invalidate(book.id()));
+    }
+
+    public CacheStatistics getStatistics() {
+        var stats = booksJson.stats();
+        return new CacheStatistics(NAME, booksJson.estimatedSize(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+}
@@ -1,32 +1,90 @@
 package org.example.service;
 
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookChanges;
+import org.example.dto.BookDto;
+import org.example.dto.BookFilter;
+import org.example.dto.BookVersion;
+import org.example.dto.BulkResult;
+import org.example.dto.BulkUpdate;
+import org.example.dto.CursorPage;
+import org.example.event.BookEvent;
 import org.example.model.Book;
+import org.example.repository.BookChangeLogRepository;
 import org.example.repository.BookRepository;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class BookService {
 
     @Inject
     BookRepository bookRepository;
+    @Inject
+    BookCache bookCache;
+    @Inject
+    BookChangeLogRepository bookChangeLogRepository;
+    @Inject
+    PageSizes pageSizes;
+
+    @ConfigProperty(name = "books.changes.retention", defaultValue = "7D")
+    Duration changesRetention;
 
-    public List<Book> getAll() {
-        return bookRepository.findAll()
-                .list();
+    public CursorPage<BookDto> getAll(Long after, Integer limit) {
+        var pageSize = pageSizes.of(limit);
+        var books = bookRepository.findPage(after, pageSize + 1);
+        return CursorPage.of(books, pageSize, BookDto::id);
     }
 
     public Book getById(long id) {
-        return bookRepository.findById(id);
+        return bookCache.getById(id, bookRepository::findForRead);
     }
 
     public Book getByTitle(String title) {
-        return bookRepository.find("title", title)
-                .firstResultOptional()
-                .orElse(null);
+        return bookCache.getByTitle(title, bookRepository::findByTitleForRead);
+    }
+
+    public Book getByTitleIgnoreCase(String title) {
+        return bookCache.getByNormalizedTitle(Book.normalizeTitle(title), bookRepository::findByNormalizedTitleForRead);
+    }
+
+    // The version of a cached book is current, as the cache is invalidated whenever a book changes
+    public BookVersion getVersion(long id) {
+        var book = bookCache.getCachedById(id);
+        if (book != null) {
+            return new BookVersion(book.getId(), book.getVersion(), book.getUpdatedAt());
+        }
+        return bookRepository.findVersion(id);
+    }
+
+    public Book getCachedById(long id) {
+        return bookCache.getCachedById(id);
+    }
+
+    public Book getCachedByTitle(String title, boolean ignoreCase) {
+        if (ignoreCase) {
+            return bookCache.getCachedByNormalizedTitle(Book.normalizeTitle(title));
+        }
+        return bookCache.getCachedByTitle(title);
+    }
+
+    public List<BookDto> searchByTitlePrefix(String prefix, Integer limit) {
+        if (prefix == null || prefix.isBlank()) {
+            throw new IllegalArgumentException("Prefix must not be empty");
+        }
+        return bookRepository.searchByTitlePrefix(prefix, pageSizes.of(limit));
     }
 
     @Transactional
@@ -38,8 +96,91 @@ public class BookService {
         return bookRepository.update(id, book);
     }
 
+    public Book update(long id, Book book, Long expectedVersion) {
+        return bookRepository.update(id, book, expectedVersion);
+    }
+
     @Transactional
     public void deleteById(long id) {
         bookRepository.deleteById(id);
     }
+
+    public BulkResult updateByFilter(BookFilter filter, BulkUpdate update) {
+        return bookRepository.updateByFilter(filter, update);
+    }
+
+    public BulkResult deleteByFilter(BookFilter filter) {
+        return bookRepository.deleteByFilter(filter);
+    }
+
+    // Without 'since' only the token of the present is returned: a client takes it, then loads all the books,
+    // and from then on asks for the changes since its last token. The cost depends on the number of changes only.
+    // Tokens are positions in the change log (see BookChangeLogRepository).
+    public BookChanges getChanges(Long since, Integer limit) {
+
+        var lastPosition = bookChangeLogRepository.assignPositions();
+        if (since == null) {
+            return new BookChanges(List.of(), lastPosition, false, false);
+        }
+
+        var pageSize = pageSizes.of(limit);
+        var entries = bookChangeLogRepository.findAfter(since, pageSize + 1);
+        // Checked after the read: changes purged since then have been read already
+        if (since < bookChangeLogRepository.purgedThrough()) {
+            return new BookChanges(List.of(), lastPosition, false, true);
+        }
+        var more = entries.size() > pageSize;
+        if (more) {
+            entries = entries.subList(0, pageSize);
+        }
+        // Other readers may have given positions beyond 'lastPosition' in the meantime
+        var token = more || (!entries.isEmpty() && entries.getLast().getPosition() > lastPosition)
+                ? entries.getLast().getPosition()
+                : Math.max(since, lastPosition);
+
+        // Only the latest change of a book matters, and a clear makes the changes before it irrelevant
+        var latest = new LinkedHashMap<Long, BookEvent.Type>();
+        var cleared = false;
+        for (var entry : entries) {
+            if (entry.getType() == BookEvent.Type.CLEARED) {
+                latest.clear();
+                cleared = true;
+            } else {
+                latest.remove(entry.getBookId());
+                latest.put(entry.getBookId(), entry.getType());
+            }
+        }
+
+        var upsertedIds = latest.entrySet().stream()
+                .filter(entry -> entry.getValue() != BookEvent.Type.DELETED)
+                .map(Map.Entry::getKey)
+                .toList();
+        Map<Long, BookDto> books = upsertedIds.isEmpty()
+                ? Map.of()
+                : bookRepository.findByFilter(new BookFilter(upsertedIds, null, null)).stream()
+                        .collect(Collectors.toMap(BookDto::id, Function.identity()));
+
+        var changes = new ArrayList<BookChanges.Change>();
+        if (cleared) {
+            changes.add(new BookChanges.Change(BookChanges.Type.CLEARED, null, null));
+        }
+        latest.keySet().forEach(id -> {
+            // A book missing here has been deleted since, and its deletion comes later
+            var book = books.get(id);
+            changes.add(book == null
+                    ? new BookChanges.Change(BookChanges.Type.DELETED, id, null)
+                    : new BookChanges.Change(BookChanges.Type.UPSERTED, id, book));
+        });
+
+        return new BookChanges(changes, token, more, false);
+    }
+
+    // The retention of the change log: clients whose token is older than that have to load all the books again
+    @Scheduled(every = "${books.changes.purge-interval:1H}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public void purgeChanges() {
+        var deleted = bookChangeLogRepository.purge(Instant.now().minus(changesRetention));
+        if (deleted > 0) {
+            Log.debugf("Purged %d book changes older than %s", deleted, changesRetention);
+        }
+    }
 }
@@ -0,0 +1,232 @@
+package org.example.service;
+
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.example.dto.BookDto;
+import org.example.dto.FullTextIndexStatistics;
+import org.example.event.BookEvent;
+import org.example.repository.BookRepository;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// In-memory inverted index over book titles and author names, with both whole words and trigrams as terms.
+// Readers never lock: postings are concurrent sets, and updates of the same book are serialized per book only.
+@ApplicationScoped
+public class FullTextIndex {
+
+    private static final double WORD_SCORE = 1.0;
+    private static final double TITLE_PREFIX_SCORE = 0.5;
+    // A book is a hit if it scores at least this much per word of the query
+    private static final double MIN_SCORE_PER_QUERY_WORD = 0.5;
+
+    // Rough sizes of the index structures (64-bit JVM with compressed oops), used to estimate the memory footprint
+    // (every posting is also kept in the terms of its document, to be able to remove it later)
+    private static final long POSTING_BYTES = 40 + 32;
+    private static final long TERM_BYTES = 160;
+    private static final long DOCUMENT_BYTES = 200;
+
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong postingsNumber = new AtomicLong();
+
+    @Inject
+    BookRepository bookRepository;
+
+    @ConfigProperty(name = "books.export.fetch-size", defaultValue = "500")
+    int fetchSize;
+
+    // Books deleted while the index is being built from the database (null once it's built)
+    private volatile Set<Long> removedWhileBuilding;
+
+    private record Document(BookDto book, String titleNormalized, Set<String> terms) {
+    }
+
+    // The index is built in the background, so that a cold start doesn't wait for all the books to be read.
+    // Until then searches only find the books read so far (and the ones changed since the start).
+    void onStart(@Observes StartupEvent event) {
+        removedWhileBuilding = ConcurrentHashMap.newKeySet();
+        Thread.ofVirtual().name("full-text-index-build").start(this::build);
+    }
+
+    void build() {
+        try {
+            bookRepository.scrollAll(fetchSize, this::index);
+        } finally {
+            removedWhileBuilding = null;
+        }
+    }
+
+    void onBookEvent(@Observes(during = TransactionPhase.AFTER_SUCCESS) BookEvent event) {
+        switch (event.type()) {
+            case CREATED, UPDATED -> index(event.book());
+            case DELETED -> remove(event.previous().id());
+            case CLEARED -> clear();
+        }
+    }
+
+    void index(BookDto book) {
+
+        var terms = new HashSet<String>();
+        Stream.concat(Stream.of(book.title()), book.authors().stream())
+                .flatMap(text -> words(text).stream())
+                .forEach(word -> {
+                    terms.add(word);
+                    terms.addAll(trigrams(word, true));
+                });
+
+        var document = new Document(book, normalize(book.title()), terms);
+
+        documents.compute(book.id(), (id, previous) -> {
+            // While the index is being built, the database may return books older than the ones indexed from events
+            if (isRemovedWhileBuilding(id) || isNewer(previous, book)) {
+                return previous;
+            }
+            if (previous != null) {
+                previous.terms().stream()
+                        .filter(term -> !terms.contains(term))
+                        .forEach(term -> removePosting(term, id));
+            }
+            terms.stream()
+                    .filter(term -> previous == null || !previous.terms().contains(term))
+                    .forEach(term -> addPosting(term, id));
+            return document;
+        });
+    }
+
+    void remove(Long id) {
+        var removed = removedWhileBuilding;
+        if (removed != null) {
+            removed.add(id);
+        }
+        documents.computeIfPresent(id, (key, document) -> {
+            document.terms().forEach(term -> removePosting(term, key));
+            return null;
+        });
+    }
+
+    void clear() {
+        documents.keySet().forEach(this::remove);
+    }
+
+    private boolean isRemovedWhileBuilding(Long id) {
+        var removed = removedWhileBuilding;
+        return removed != null && removed.contains(id);
+    }
+
+    private static boolean isNewer(Document document, BookDto book) {
+        return document != null && document.book().version() != null && book.version() != null
+                && document.book().version() > book.version();
+    }
+
+    private void addPosting(String term, Long id) {
+        postings.compute(term, (key, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            if (ids.add(id)) {
+                postingsNumber.incrementAndGet();
+            }
+            return ids;
+        });
+    }
+
+    private void removePosting(String term, Long id) {
+        postings.computeIfPresent(term, (key, ids) -> {
+            if (ids.remove(id)) {
+                postingsNumber.decrementAndGet();
+            }
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    // Every query word scores a book by the share of its trigrams found in the book, plus a bonus for the whole word.
+    // Query words are only padded at the start, so the last word can be an unfinished one ("search as you type").
+    public List<BookDto> search(String query, int limit) {
+
+        var queryWords = words(query);
+        if (queryWords.isEmpty()) {
+            return List.of();
+        }
+
+        var scores = new HashMap<Long, Double>();
+
+        for (var word : queryWords) {
+            postings.getOrDefault(word, Set.of())
+                    .forEach(id -> scores.merge(id, WORD_SCORE, Double::sum));
+
+            var trigrams = trigrams(word, false);
+            for (var trigram : trigrams) {
+                postings.getOrDefault(trigram, Set.of())
+                        .forEach(id -> scores.merge(id, 1.0 / trigrams.size(), Double::sum));
+            }
+        }
+
+        var queryNormalized = String.join(" ", queryWords);
+        var minScore = MIN_SCORE_PER_QUERY_WORD * queryWords.size();
+
+        return scores.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue() + titlePrefixScore(entry.getKey(), queryNormalized)))
+                .filter(entry -> entry.getValue() >= minScore)
+                .sorted(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .map(entry -> documents.get(entry.getKey()))
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(Document::book)
+                .toList();
+    }
+
+    private double titlePrefixScore(Long id, String queryNormalized) {
+        var document = documents.get(id);
+        return document != null && document.titleNormalized().startsWith(queryNormalized) ? TITLE_PREFIX_SCORE : 0;
+    }
+
+    public FullTextIndexStatistics getStatistics() {
+        long books = documents.size();
+        long terms = postings.size();
+        long postingsTotal = postingsNumber.get();
+        long estimatedBytes = books * DOCUMENT_BYTES + terms * TERM_BYTES + postingsTotal * POSTING_BYTES;
+        return new FullTextIndexStatistics(books, terms, postingsTotal, estimatedBytes, books == 0 ? 0 : estimatedBytes / books);
+    }
+
+    private static List<String> words(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", words(text));
+    }
+
+    // Trigrams are prefixed with '#' so that they never collide with whole words of three letters
+    private static Set<String> trigrams(String word, boolean padEnd) {
+        var padded = " " + word + (padEnd ? " " : "");
+        var trigrams = new HashSet<String>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add("#" + padded.substring(i, i + 3));
+        }
+        if (trigrams.isEmpty()) {
+            trigrams.add("#" + padded);
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+// Page size of the paged reads of books, authors and changes: the 'limit' asked for, up to 'books.page.max-size'
+@ApplicationScoped
+public class PageSizes {
+
+    @ConfigProperty(name = "books.page.default-size", defaultValue = "20")
+    int defaultPageSize;
+    @ConfigProperty(name = "books.page.max-size", defaultValue = "100")
+    int maxPageSize;
+
+    public int of(Integer limit) {
+        if (limit == null || limit < 1) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+// Concurrent loads of the same key share one call of the loader: the first caller runs it, and the others wait
+// for its result (or get its exception). Nothing is kept once the call is over, so this is no cache.
+// A caller that has waited 'timeout' loads on its own, so a stuck load doesn't hold up everyone behind it.
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Duration timeout;
+    private final Counter leaders;
+    private final Counter coalesced;
+    private final Counter timedOut;
+
+    public SingleFlight(String name, Duration timeout, MeterRegistry meterRegistry) {
+        this.timeout = timeout;
+        leaders = meterRegistry.counter("books.single-flight.loads", "lookup", name, "result", "leader");
+        coalesced = meterRegistry.counter("books.single-flight.loads", "lookup", name, "result", "coalesced");
+        timedOut = meterRegistry.counter("books.single-flight.loads", "lookup", name, "result", "timed-out");
+    }
+
+    public V load(K key, Function<K, V> loader) {
+
+        var flight = new CompletableFuture<V>();
+        var existing = flights.putIfAbsent(key, flight);
+
+        if (existing == null) {
+            leaders.increment();
+            try {
+                var value = loader.apply(key);
+                flight.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                flights.remove(key, flight);
+            }
+        }
+
+        try {
+            var value = existing.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            coalesced.increment();
+            return value;
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            return loader.apply(key);
+        } catch (ExecutionException e) {
+            coalesced.increment();
+            // The exception of the leader (with its stack trace)
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the load of " + key, e);
+        }
+    }
+
+    // Callers from now on start a load of their own instead of joining the one in progress (e.g. as the value has changed)
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    public void forgetAll() {
+        flights.clear();
+    }
+}
@@ -0,0 +1,10 @@
+-- Columns added to books since the baseline, filled in for the existing rows:
+-- the lower-cased title of the case-insensitive and prefix lookups, and the version and time of the last update.
+
+alter table books add column title_normalized varchar(255);
+alter table books add column version bigint not null default 0;
+alter table books add column updated_at timestamp(6) with time zone;
+
+update books set title_normalized = lower(trim(title));
+
+create index idx_books_title_normalized on books (title_normalized);
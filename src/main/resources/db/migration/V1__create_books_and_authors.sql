@@ -0,0 +1,26 @@
+-- Schema of the entities as 'quarkus.hibernate-orm.database.generation=update' created it before the migrations
+-- (with ids from identity columns). Databases created that way are baselined at this version, so this script
+-- only runs on new databases, and everything since then is added by the later migrations.
+
+create table books (
+    id           bigint generated by default as identity,
+    title        varchar(255) not null,
+    publish_year integer,
+    constraint books_pkey primary key (id),
+    constraint uk_books_title_publish_year unique (title, publish_year)
+);
+
+create table authors (
+    id   bigint generated by default as identity,
+    name varchar(255) not null,
+    constraint authors_pkey primary key (id),
+    constraint uk_authors_name unique (name)
+);
+
+create table book_author (
+    book_id   bigint not null,
+    author_id bigint not null,
+    constraint book_author_pkey primary key (book_id, author_id),
+    constraint fk_book_author_book foreign key (book_id) references books (id),
+    constraint fk_book_author_author foreign key (author_id) references authors (id)
+);
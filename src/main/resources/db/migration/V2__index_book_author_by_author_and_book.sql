@@ -0,0 +1,6 @@
+-- Books of an author in the order of their ids ('GET /authors/{id}/books') and the numbers of books per author
+-- ('GET /authors') are read from this index alone. It replaces the index on 'author_id' only.
+
+drop index if exists idx_book_author_author_id;
+
+create index idx_book_author_author_id_book_id on book_author (author_id, book_id);
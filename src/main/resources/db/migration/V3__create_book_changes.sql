@@ -0,0 +1,12 @@
+-- Change log of books read by 'GET /books/changes': a row per committed change, in the order of its id.
+-- 'book_id' has no foreign key, as the rows of deleted books are kept as tombstones ('book_id' is null for a clear).
+
+create sequence book_changes_seq start with 1 increment by 50;
+
+create table book_changes (
+    id          bigint                      not null,
+    book_id     bigint,
+    change_type varchar(16)                 not null,
+    changed_at  timestamp(6) with time zone not null,
+    constraint book_changes_pkey primary key (id)
+);
@@ -0,0 +1,22 @@
+-- Ids of book_changes come from blocks of a sequence allocated per instance, so they don't tell the order in which
+-- the changes were committed. Committed changes are given a position by one transaction at a time (under the lock of
+-- the row of book_change_positions), which only sees committed changes: a change committed later always gets a
+-- greater position than the ones a reader may have already read. The existing changes keep the order of their ids.
+-- 'purged_through' is the greatest position deleted by the retention of the log.
+
+alter table book_changes add column log_position bigint;
+
+update book_changes set log_position = id;
+
+create unique index idx_book_changes_log_position on book_changes (log_position);
+create index idx_book_changes_changed_at on book_changes (changed_at);
+
+create table book_change_positions (
+    id             integer not null,
+    last_position  bigint  not null,
+    purged_through bigint  not null,
+    constraint book_change_positions_pkey primary key (id)
+);
+
+insert into book_change_positions (id, last_position, purged_through)
+select 1, coalesce(max(log_position), 0), 0 from book_changes;
@@ -0,0 +1,516 @@
+package org.example.loadtest;
+
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// HTTP load test, run with: ./mvnw test -Pload-test
+// Workers are closed-loop clients (each one sends its next request when the previous one is answered).
+// Scenarios ('load-test.scenario'):
+//   mixed              read/write workload against every route of BookResource and AuthorResource (default).
+//                      'stream' is the time until a new subscriber of 'GET /books/stream' receives its first change.
+//   slow-transaction   every request holds a transaction and its connection for 'load-test.slow-transaction.millis' ms (50),
+//                      to compare virtual threads with the worker pool (see SlowTransactionResource)
+//   cached-reads       'GET /books/{id}' and 'GET /books/title/{title}' of the seeded books, which are all in the book cache
+//                      after the warmup, to compare 'load-test.reactive' true and false (see NonBlockingReads)
+// Settings (system properties):
+//   load-test.virtual-threads  run the blocking endpoints on virtual threads (true) or on the worker pool (false)
+//   load-test.worker-threads   maximum size of the worker pool (Quarkus default if not set)
+//   load-test.reactive         answer the lookups found in the book cache on the I/O thread (true, 'books.reactive.enabled')
+//                              or on a virtual thread (false)
+//   load-test.concurrency      number of concurrent clients (32)
+//   load-test.duration         measured time in seconds (30), after 'load-test.warmup' seconds (5)
+//   load-test.read-ratio       share of read requests (0.9)
+//   load-test.books            number of books imported before the run (1000)
+//   load-test.budget.<p>       latency budget in ms for percentile <p> (p50, p95, p99, p999) of every route,
+//   load-test.budget.<route>.<p>  or of one route, e.g. 'load-test.budget.get-by-id.p99=20'
+// The percentile distribution of every route is written to target/load-test/<route>.hgrm.
+@QuarkusTest
+@TestProfile(LoadTest.LoadTestProfile.class)
+@EnabledIfSystemProperty(named = "load-test.enabled", matches = "true")
+class LoadTest {
+
+    private static final List<String> PERCENTILES = List.of("p50", "p95", "p99", "p999");
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\"token\":(\\d+)");
+    private static final Pattern TRACKING_ID_PATTERN = Pattern.compile("\"trackingId\":\"([^\"]+)\"");
+    private static final Duration STREAM_TIMEOUT = Duration.ofSeconds(5);
+    private static final Path REPORT_DIRECTORY = Path.of("target", "load-test");
+
+    public static class LoadTestProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            var overrides = new HashMap<>(Map.of(
+                    "quarkus.http.test-port", "9090",
+                    "quarkus.hibernate-orm.log.sql", "false",
+                    "quarkus.hibernate-orm.statistics", "false",
+                    "books.import.chunk-size", "500",
+                    "quarkus.virtual-threads.enabled", System.getProperty("load-test.virtual-threads", "true"),
+                    "books.reactive.enabled", System.getProperty("load-test.reactive", "true"),
+                    "load-test.slow-transaction.enabled", "true"
+            ));
+            var workerThreads = System.getProperty("load-test.worker-threads");
+            if (workerThreads != null) {
+                overrides.put("quarkus.thread-pool.max-threads", workerThreads);
+            }
+            return overrides;
+        }
+    }
+
+    @TestHTTPResource("/books")
+    URI books;
+    @TestHTTPResource("/authors")
+    URI authors;
+    @TestHTTPResource("/load-test/slow-transaction")
+    URI slowTransaction;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<Long> seededIds = new ArrayList<>();
+    private final ConcurrentLinkedDeque<Long> createdIds = new ConcurrentLinkedDeque<>();
+    private final List<Long> authorIds = new ArrayList<>();
+    private final ConcurrentLinkedDeque<String> trackingIds = new ConcurrentLinkedDeque<>();
+    private final AtomicLong changesToken = new AtomicLong();
+
+    private final List<Route> reads = List.of(
+            new Route("get-all", 20, () -> get("?limit=20&after=" + (randomSeededId() - 1))),
+            new Route("get-by-id", 30, () -> get("/" + randomSeededId())),
+            new Route("get-by-title", 15, () -> get("/title/" + encode(seededTitle(randomSeededIndex())))),
+            new Route("get-by-title-ignore-case", 5, () -> get("/title/" + encode(seededTitle(randomSeededIndex()).toUpperCase()) + "?ignoreCase=true")),
+            new Route("search", 10, () -> get("/search?limit=10&prefix=" + encode("load test book " + randomSeededIndex() / 10))),
+            new Route("fulltext", 15, () -> get("/fulltext?limit=10&q=" + encode("author " + randomSeededIndex() % 100))),
+            new Route("export", 1, () -> get("/export?format=" + (ThreadLocalRandom.current().nextBoolean() ? "csv" : "ndjson"))),
+            new Route("cache-stats", 2, () -> get("/cache/stats")),
+            new Route("fulltext-stats", 2, () -> get("/fulltext/stats")),
+            new Route("facets", 5, () -> get("/facets?limit=10")),
+            new Route("changes", 5, this::changes),
+            new Route("stream", 1, this::stream),
+            new Route("ingestion-status", 3, this::ingestionStatus),
+            new Route("authors-get-all", 5, () -> get(authors, "?limit=20&after=" + (randomAuthorId() - 1))),
+            new Route("authors-get-books", 5, () -> get(authors, "/" + randomAuthorId() + "/books?limit=20"))
+    );
+
+    private final List<Route> writes = List.of(
+            new Route("create", 40, this::create),
+            new Route("create-async", 10, this::createAsync),
+            new Route("import", 5, this::importBooks),
+            new Route("update", 35, this::update),
+            new Route("bulk-update", 5, this::bulkUpdate),
+            new Route("delete", 20, this::delete),
+            new Route("bulk-delete", 5, this::bulkDelete)
+    );
+
+    private final List<Route> slowTransactions = List.of(
+            new Route("slow-transaction", 1, () -> client.send(HttpRequest.newBuilder(URI.create(slowTransaction + "?millis=" + Long.getLong("load-test.slow-transaction.millis", 50))).build(),
+                    HttpResponse.BodyHandlers.ofString()))
+    );
+
+    private final List<Route> cachedReads = List.of(
+            new Route("get-by-id", 2, () -> get("/" + randomSeededId())),
+            new Route("get-by-title", 1, () -> get("/title/" + encode(seededTitle(randomSeededIndex()))))
+    );
+
+    private final String scenario = System.getProperty("load-test.scenario", "mixed");
+
+    private record Route(String name, int weight, Request request, Histogram histogram, AtomicLong errors) {
+
+        Route(String name, int weight, Request request) {
+            // Latencies in microseconds, up to a minute, with 3 significant digits
+            this(name, weight, request, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3), new AtomicLong());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        HttpResponse<?> send() throws IOException, InterruptedException;
+    }
+
+    @Test
+    void runLoad() throws Exception {
+
+        var concurrency = Integer.getInteger("load-test.concurrency", 32);
+        var warmup = Duration.ofSeconds(Long.getLong("load-test.warmup", 5));
+        var duration = Duration.ofSeconds(Long.getLong("load-test.duration", 30));
+        var readRatio = Double.parseDouble(System.getProperty("load-test.read-ratio", "0.9"));
+
+        if (!scenario.equals("slow-transaction")) {
+            seed(Integer.getInteger("load-test.books", 1000));
+        }
+
+        run(concurrency, warmup, readRatio);
+        allRoutes().forEach(route -> {
+            route.histogram().reset();
+            route.errors().set(0);
+        });
+        run(concurrency, duration, readRatio);
+
+        var violations = report(concurrency, duration, readRatio);
+        assertTrue(violations.isEmpty(), String.join("\n", violations));
+    }
+
+    private void seed(int booksCount) throws IOException, InterruptedException {
+
+        var ndjson = IntStream.range(0, booksCount)
+                .mapToObj(i -> String.format("{\"title\":\"%s\",\"year\":%d,\"authors\":[\"load test author %d\",\"load test author %d\"]}",
+                        seededTitle(i), 1900 + i % 100, i % 100, (i + 1) % 100))
+                .collect(Collectors.joining("\n"));
+
+        var response = client.send(HttpRequest.newBuilder(URI.create(books + "/bulk"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(response.statusCode() == 200 && response.body().contains("\"failed\":0"), response.body());
+
+        // Keyset pages are ordered by id, so the seeded books are the first ones
+        var after = Long.MIN_VALUE;
+        while (seededIds.size() < booksCount) {
+            var page = get("?limit=100&after=" + after).body();
+            var ids = ID_PATTERN.matcher(page).results()
+                    .map(match -> Long.parseLong(match.group(1)))
+                    .toList();
+            if (ids.isEmpty()) {
+                break;
+            }
+            seededIds.addAll(ids);
+            after = ids.getLast();
+        }
+
+        // Only the seeded books have authors yet
+        after = Long.MIN_VALUE;
+        while (true) {
+            var page = get(authors, "?limit=100&after=" + after).body();
+            var ids = ID_PATTERN.matcher(page).results()
+                    .map(match -> Long.parseLong(match.group(1)))
+                    .toList();
+            if (ids.isEmpty()) {
+                break;
+            }
+            authorIds.addAll(ids);
+            after = ids.getLast();
+        }
+    }
+
+    private void run(int concurrency, Duration duration, double readRatio) throws InterruptedException {
+
+        var end = System.nanoTime() + duration.toNanos();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        call(pick(readRatio));
+                    }
+                });
+            }
+        }
+    }
+
+    private Route pick(double readRatio) {
+        return switch (scenario) {
+            case "mixed" -> pick(ThreadLocalRandom.current().nextDouble() < readRatio ? reads : writes);
+            case "slow-transaction" -> pick(slowTransactions);
+            case "cached-reads" -> pick(cachedReads);
+            default -> throw new IllegalArgumentException("Unknown load test scenario: " + scenario);
+        };
+    }
+
+    private Route pick(List<Route> routes) {
+        var total = routes.stream().mapToInt(Route::weight).sum();
+        var value = ThreadLocalRandom.current().nextInt(total);
+        for (var route : routes) {
+            value -= route.weight();
+            if (value < 0) {
+                return route;
+            }
+        }
+        return routes.getLast();
+    }
+
+    private void call(Route route) {
+        var start = System.nanoTime();
+        try {
+            var response = route.request().send();
+            if (response != null && response.statusCode() >= 400) {
+                route.errors().incrementAndGet();
+            }
+        } catch (IOException e) {
+            route.errors().incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        route.histogram().recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), route.histogram().getHighestTrackableValue()));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return get(books, path);
+    }
+
+    private HttpResponse<String> get(URI base, String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String json) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(books + path))
+                        .header("Content-Type", "application/json")
+                        .method(method, HttpRequest.BodyPublishers.ofString(json))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> create() throws IOException, InterruptedException {
+        var id = sequence.incrementAndGet();
+        var response = send("POST", "", String.format("{\"title\":\"load test new book %d\",\"year\":2000,\"authors\":[{\"name\":\"load test author %d\"},{\"name\":\"load test new author %d\"}]}",
+                id, id % 100, id));
+        var matcher = ID_PATTERN.matcher(response.body());
+        if (response.statusCode() == 200 && matcher.find()) {
+            createdIds.add(Long.parseLong(matcher.group(1)));
+        }
+        return response;
+    }
+
+    private HttpResponse<String> createAsync() throws IOException, InterruptedException {
+        var id = sequence.incrementAndGet();
+        var response = send("POST", "?async=true", String.format("{\"title\":\"load test queued book %d\",\"year\":2000,\"authors\":[{\"name\":\"load test author %d\"}]}",
+                id, id % 100));
+        var matcher = TRACKING_ID_PATTERN.matcher(response.body());
+        if (response.statusCode() == 202 && matcher.find()) {
+            trackingIds.add(matcher.group(1));
+        }
+        return response;
+    }
+
+    private HttpResponse<String> ingestionStatus() throws IOException, InterruptedException {
+        var trackingId = trackingIds.pollFirst();
+        if (trackingId == null) {
+            return createAsync();
+        }
+        var response = get("/ingestion/" + trackingId);
+        if (response.body().contains("\"QUEUED\"")) {
+            trackingIds.addLast(trackingId);
+        }
+        return response;
+    }
+
+    // Every client follows the changes from the latest token any client has seen
+    private HttpResponse<String> changes() throws IOException, InterruptedException {
+        var response = get("/changes?limit=100&since=" + changesToken.get());
+        var matcher = TOKEN_PATTERN.matcher(response.body());
+        if (response.statusCode() == 200 && matcher.find()) {
+            changesToken.accumulateAndGet(Long.parseLong(matcher.group(1)), Math::max);
+        }
+        return response;
+    }
+
+    // Subscribes and waits for the first change, which comes from the writes of the other clients
+    private HttpResponse<?> stream() throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(books + "/stream"))
+                .header("Accept", "text/event-stream")
+                .build();
+        var response = client.sendAsync(request, HttpResponse.BodyHandlers.ofLines());
+        try (var lines = response.get(STREAM_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).body()) {
+            CompletableFuture.supplyAsync(() -> lines.filter(line -> line.startsWith("event:")).findFirst(), client.executor().orElseThrow())
+                    .get(STREAM_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                    .orElseThrow(() -> new IOException("Stream ended before the first change"));
+            return response.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new HttpTimeoutException("No change on the stream within " + STREAM_TIMEOUT.toSeconds() + " s");
+        }
+    }
+
+    private HttpResponse<String> importBooks() throws IOException, InterruptedException {
+        var ndjson = IntStream.range(0, 10)
+                .mapToObj(i -> String.format("{\"title\":\"load test imported book %d\",\"year\":2000,\"authors\":[\"load test author %d\"]}",
+                        sequence.incrementAndGet(), i))
+                .collect(Collectors.joining("\n"));
+        return client.send(HttpRequest.newBuilder(URI.create(books + "/bulk"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Only the year and the authors change, so the seeded titles stay valid for the reads
+    private HttpResponse<String> update() throws IOException, InterruptedException {
+        var random = ThreadLocalRandom.current();
+        return send("PATCH", "/" + randomSeededId(), String.format("{\"year\":%d,\"authors\":[{\"name\":\"load test author %d\"}]}",
+                1900 + random.nextInt(100), random.nextInt(100)));
+    }
+
+    private HttpResponse<String> bulkUpdate() throws IOException, InterruptedException {
+        var random = ThreadLocalRandom.current();
+        var ids = random.ints(10, 0, seededIds.size())
+                .mapToObj(index -> String.valueOf(seededIds.get(index)))
+                .collect(Collectors.joining(","));
+        return send("PATCH", "?ids=" + ids, String.format("{\"%s\":[\"load test author %d\"]}",
+                random.nextBoolean() ? "addAuthors" : "removeAuthors", random.nextInt(100)));
+    }
+
+    private HttpResponse<String> bulkDelete() throws IOException, InterruptedException {
+        var ids = new ArrayList<Long>();
+        for (Long id; ids.size() < 10 && (id = createdIds.pollFirst()) != null; ) {
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return create();
+        }
+        return client.send(HttpRequest.newBuilder(URI.create(books + "?ids=" + ids.stream().map(String::valueOf).collect(Collectors.joining(","))))
+                        .DELETE()
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete() throws IOException, InterruptedException {
+        var id = createdIds.pollFirst();
+        if (id == null) {
+            return create();
+        }
+        return client.send(HttpRequest.newBuilder(URI.create(books + "/" + id)).DELETE().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<String> report(int concurrency, Duration duration, double readRatio) throws IOException {
+
+        Files.createDirectories(REPORT_DIRECTORY);
+
+        var out = System.out;
+        out.printf("%nLoad test: %s, %d clients, %d s, read ratio %.2f, %s, reactive %s%n", scenario, concurrency, duration.toSeconds(), readRatio,
+                Boolean.parseBoolean(System.getProperty("load-test.virtual-threads", "true")) ? "virtual threads"
+                        : "worker pool of " + System.getProperty("load-test.worker-threads", "default") + " threads",
+                System.getProperty("load-test.reactive", "true"));
+        out.printf("%-26s %8s %9s %7s %9s %9s %9s %9s %9s%n", "route", "requests", "req/s", "errors", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+
+        var violations = new ArrayList<String>();
+        var total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+
+        for (var route : allRoutes()) {
+
+            var histogram = route.histogram();
+            total.add(histogram);
+            printLine(out, route.name(), histogram, route.errors().get(), duration);
+
+            try (var file = new PrintStream(Files.newOutputStream(REPORT_DIRECTORY.resolve(route.name() + ".hgrm")))) {
+                // Values are recorded in microseconds and reported in milliseconds
+                histogram.outputPercentileDistribution(file, 1000.0);
+            }
+
+            if (route.errors().get() > 0) {
+                violations.add(String.format("%s: %d failed requests", route.name(), route.errors().get()));
+            }
+            budgets(route.name()).forEach((percentile, budget) -> {
+                var value = histogram.getValueAtPercentile(percentileValue(percentile)) / 1000.0;
+                if (histogram.getTotalCount() > 0 && value > budget) {
+                    violations.add(String.format("%s: %s is %.1f ms, budget %.1f ms", route.name(), percentile, value, budget));
+                }
+            });
+        }
+
+        printLine(out, "total", total, allRoutes().stream().mapToLong(route -> route.errors().get()).sum(), duration);
+        violations.forEach(violation -> out.println("Budget exceeded: " + violation));
+
+        return violations;
+    }
+
+    private void printLine(PrintStream out, String name, Histogram histogram, long errors, Duration duration) {
+        out.printf("%-26s %8d %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / (double) duration.toSeconds(), errors,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(95) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+
+    private Map<String, Double> budgets(String route) {
+        var budgets = new LinkedHashMap<String, Double>();
+        for (var percentile : PERCENTILES) {
+            var budget = System.getProperty("load-test.budget." + route + "." + percentile, System.getProperty("load-test.budget." + percentile));
+            if (budget != null) {
+                budgets.put(percentile, Double.parseDouble(budget));
+            }
+        }
+        return budgets;
+    }
+
+    private static double percentileValue(String percentile) {
+        return switch (percentile) {
+            case "p50" -> 50;
+            case "p95" -> 95;
+            case "p99" -> 99;
+            default -> 99.9;
+        };
+    }
+
+    private List<Route> allRoutes() {
+        if (scenario.equals("slow-transaction")) {
+            return slowTransactions;
+        }
+        if (scenario.equals("cached-reads")) {
+            return cachedReads;
+        }
+        var routes = new ArrayList<>(reads);
+        routes.addAll(writes);
+        return routes;
+    }
+
+    private long randomSeededId() {
+        return seededIds.get(randomSeededIndex());
+    }
+
+    private long randomAuthorId() {
+        return authorIds.get(ThreadLocalRandom.current().nextInt(authorIds.size()));
+    }
+
+    private int randomSeededIndex() {
+        return ThreadLocalRandom.current().nextInt(seededIds.size());
+    }
+
+    private static String seededTitle(int index) {
+        return "load test book " + index;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
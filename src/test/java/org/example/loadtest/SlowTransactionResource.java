@@ -0,0 +1,30 @@
+package org.example.loadtest;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.QueryParam;
+
+// Slow-transaction scenario of LoadTest: every request keeps a transaction and its connection open while it waits
+// 'millis' ms, like a slow query, so throughput depends on how many requests can wait at the same time
+@Path("/load-test/slow-transaction")
+@IfBuildProperty(name = "load-test.slow-transaction.enabled", stringValue = "true")
+public class SlowTransactionResource {
+
+    @Inject
+    EntityManager entityManager;
+
+    @GET
+    @RunOnVirtualThread
+    @Transactional
+    public long slowTransaction(@QueryParam("millis") @DefaultValue("50") long millis) throws InterruptedException {
+        var count = ((Number) entityManager.createNativeQuery("select count(*) from books").getSingleResult()).longValue();
+        Thread.sleep(millis);
+        return count;
+    }
+}
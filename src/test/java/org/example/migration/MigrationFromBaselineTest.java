@@ -0,0 +1,103 @@
+package org.example.migration;
+
+import org.example.model.Book;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Upgrade of a database created by 'generation=update' before the migrations, with the configuration of
+// application.properties (baselined at version 1, with the H2 variants of db/vendor)
+class MigrationFromBaselineTest {
+
+    private static final String URL = "jdbc:h2:mem:baseline;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+
+        connection = DriverManager.getConnection(URL);
+
+        // The schema as Hibernate generated it for the entities of the time (with constraint names of its own)
+        execute("""
+                create table authors (id bigint generated by default as identity, name varchar(255) not null unique,
+                    primary key (id))""");
+        execute("""
+                create table book_author (author_id bigint not null, book_id bigint not null,
+                    primary key (author_id, book_id))""");
+        execute("""
+                create table books (publish_year integer, id bigint generated by default as identity,
+                    title varchar(255) not null, primary key (id), constraint UK5pxjn4ylt1mnm4nd5ab1tgdac unique (title, publish_year))""");
+        execute("alter table book_author add constraint FKbjqhp85wjv8vpr0beygh6jsgo foreign key (author_id) references authors");
+        execute("alter table book_author add constraint FKhuh7nqrqcxv4x4ygcs3vhxxpb foreign key (book_id) references books");
+
+        execute("insert into authors (name) values ('Frank Herbert'), ('Ursula K. Le Guin')");
+        execute("insert into books (title, publish_year) values ('Dune', 1965), ('  The Left Hand of Darkness ', 1969), ('Untitled', null), ('\tÉTÉ\u2003', 2004)");
+        execute("insert into book_author (author_id, book_id) values (1, 1), (2, 2)");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        execute("drop all objects");
+        connection.close();
+    }
+
+    @Test
+    void testMigrateFromBaseline() throws SQLException {
+
+        var result = Flyway.configure()
+                .dataSource(URL, null, null)
+                .locations("db/migration", "db/vendor/h2", "org/example/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+
+        assertTrue(result.success);
+        // V1 describes the schema the database already has, so it's not applied
+        assertEquals("1", result.initialSchemaVersion);
+        assertFalse(result.migrations.stream().anyMatch(migration -> migration.version.equals("1")));
+
+        // Titles are normalized as the application does it, with all the white space stripped
+        assertEquals(List.of("dune|0", "the left hand of darkness|0", "untitled|0", "été|0"),
+                query("select title_normalized || '|' || version from books order by id"));
+        assertEquals(Book.normalizeTitle("\tÉTÉ\u2003"), query("select title_normalized from books where id = 4").getFirst());
+
+        // The first ids of the sequences are above the existing ones (the generator may take them
+        // from either end of a block of 50)
+        var nextBookId = Long.parseLong(query("select next value for books_seq").getFirst());
+        var nextAuthorId = Long.parseLong(query("select next value for authors_seq").getFirst());
+        assertTrue(nextBookId - 49 > 4, "books_seq gives " + nextBookId);
+        assertTrue(nextAuthorId - 49 > 2, "authors_seq gives " + nextAuthorId);
+
+        // Rows of the baseline are kept, and new ones need ids from the sequences
+        assertEquals(List.of("Dune|Frank Herbert"),
+                query("select b.title || '|' || a.name from books b join book_author ba on ba.book_id = b.id join authors a on a.id = ba.author_id where b.id = 1"));
+        assertThrows(SQLException.class, () -> execute("insert into books (title) values ('No id')"));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private List<String> query(String sql) throws SQLException {
+        var rows = new ArrayList<String>();
+        try (var statement = connection.createStatement(); var resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                rows.add(resultSet.getString(1));
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.monitoring;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@QuarkusTest
+class VirtualThreadPinningDetectorTest {
+
+    @Inject
+    VirtualThreadPinningDetector pinningDetector;
+
+    @Test
+    void testPinnedThreadIsDetected() throws InterruptedException {
+
+        // The recording is started in the background
+        for (int i = 0; i < 100 && !pinningDetector.isRecording(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(pinningDetector.isRecording());
+
+        var pinnedBefore = pinningDetector.getPinnedCount();
+
+        // Sleeping inside 'synchronized' pins the virtual thread to its carrier thread
+        var lock = new Object();
+        Thread.ofVirtual().start(() -> {
+            synchronized (lock) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).join();
+
+        // JFR streams its events with a delay of about a second
+        for (int i = 0; i < 100 && pinningDetector.getPinnedCount() == pinnedBefore; i++) {
+            Thread.sleep(100);
+        }
+
+        assertTrue(pinningDetector.getPinnedCount() > pinnedBefore);
+    }
+}
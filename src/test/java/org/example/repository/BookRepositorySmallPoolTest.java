@@ -0,0 +1,85 @@
+package org.example.repository;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// More concurrent creates of books with new authors than there are connections: every create must get by
+// with the one connection of its transaction, or the creates end up waiting for each other's connections
+@QuarkusTest
+@TestProfile(BookRepositorySmallPoolTest.SmallPool.class)
+class BookRepositorySmallPoolTest {
+
+    private static final int POOL_SIZE = 4;
+    private static final int CREATES = 4 * POOL_SIZE;
+    // Long enough for the creates queued behind the others on a slow machine; creates that wait for each
+    // other's connections never get one, however long they wait
+    private static final String ACQUISITION_TIMEOUT = "10S";
+
+    public static class SmallPool implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "quarkus.datasource.jdbc.min-size", "1",
+                    "quarkus.datasource.jdbc.max-size", String.valueOf(POOL_SIZE),
+                    "quarkus.datasource.jdbc.acquisition-timeout", ACQUISITION_TIMEOUT
+            );
+        }
+    }
+
+    @Inject
+    BookRepository bookRepository;
+
+    @Inject
+    AuthorRepository authorRepository;
+
+    @AfterEach
+    @Transactional
+    void tearDown() {
+        bookRepository.deleteAll();
+        authorRepository.delete("name like 'pool author %'");
+    }
+
+    @Test
+    void testCreateWithNewAuthorsAboveThePoolSize() throws Exception {
+
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<Book>>();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CREATES; i++) {
+                // Every book has an author of its own and one shared with the other books
+                var book = new Book(null, "pool book " + i, 2000 + i, new HashSet<>(Set.of(
+                        new Author(null, "pool author " + i, new ArrayList<>()),
+                        new Author(null, "pool author shared", new ArrayList<>()))));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return bookRepository.create(book);
+                }));
+            }
+            start.countDown();
+
+            for (var future : futures) {
+                assertNotNull(future.get().getId());
+            }
+        }
+
+        assertEquals(CREATES + 1, authorRepository.count("name like 'pool author %'"));
+    }
+}
@@ -1,18 +1,31 @@
 package org.example.repository;
 
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.example.dto.BookDto;
+import org.example.dto.BookFilter;
+import org.example.dto.BulkResult;
+import org.example.dto.BulkUpdate;
 import org.example.model.Author;
 import org.example.model.Book;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,9 +35,19 @@ class BookRepositoryTest {
     @Inject
     BookRepository bookRepository;
 
+    @Inject
+    AuthorRepository authorRepository;
+
     @PersistenceContext
     EntityManager entityManager;
 
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    @PersistenceUnitExtension
+    RecordingStatementInspector statementInspector;
+
     private List<Book> books;
 
     @BeforeEach
@@ -49,7 +72,7 @@ class BookRepositoryTest {
     @AfterEach
     @Transactional
     void tearDown() {
-        entityManager.createQuery("DELETE FROM Book").executeUpdate();
+        bookRepository.deleteAll();
         entityManager.createQuery("DELETE FROM Author").executeUpdate();
     }
 
@@ -83,6 +106,132 @@ class BookRepositoryTest {
         assertEquals(authorsNamesNumber, authorsIdsNumber);
     }
 
+    @Test
+    void testCreateConcurrentlyWithSameNewAuthor() throws Exception {
+
+        var threads = 8;
+        var executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+
+        try {
+            var futures = new ArrayList<Future<Book>>();
+            for (int i = 0; i < threads; i++) {
+                var book = new Book(null, "concurrent book " + i, 2000 + i,
+                        new HashSet<>(Set.of(new Author(null, "concurrent author", new ArrayList<>()))));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return bookRepository.create(book);
+                }));
+            }
+
+            start.countDown();
+
+            for (var future : futures) {
+                assertNotNull(future.get().getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1L, authorRepository.count("name", "concurrent author"));
+    }
+
+    @Test
+    void testCreateFailedDoesNotKeepNewAuthors() {
+
+        bookRepository.create(books.get(1));
+
+        var duplicate = new Book(null, books.get(1).getTitle(), books.get(1).getYear(),
+                new HashSet<>(Set.of(new Author(null, "orphan author", new ArrayList<>()))));
+        assertThrows(Exception.class, () -> bookRepository.create(duplicate));
+
+        // The new author was inserted in the transaction of the book, so it's rolled back with it
+        assertEquals(0L, authorRepository.count("name", "orphan author"));
+    }
+
+    @Test
+    void testSearchByTitlePrefix() {
+
+        books.forEach(bookRepository::create);
+
+        var booksFound = bookRepository.searchByTitlePrefix("TEST Book", 10);
+        assertEquals(books.stream().map(Book::getTitle).toList(), booksFound.stream().map(BookDto::title).toList());
+
+        booksFound = bookRepository.searchByTitlePrefix("test book 3", 10);
+        assertEquals(1, booksFound.size());
+        assertEquals(List.of("test author 2", "test author 3"), booksFound.getFirst().authors());
+
+        assertEquals(2, bookRepository.searchByTitlePrefix("test", 2).size());
+        assertTrue(bookRepository.searchByTitlePrefix("test_", 10).isEmpty());
+        assertTrue(bookRepository.searchByTitlePrefix("book", 10).isEmpty());
+    }
+
+    @Test
+    void testSearchByTitlePrefixUsesIndex() {
+
+        books.forEach(bookRepository::create);
+
+        statementInspector.clear();
+        assertEquals(books.size(), bookRepository.searchByTitlePrefix("Test", 10).size());
+
+        // The statement generated for the search, explained with the same parameters
+        var sql = statementInspector.getStatements().stream()
+                .filter(statement -> statement.contains("title_normalized"))
+                .findFirst()
+                .orElseThrow();
+        var parameters = List.<Object>of("test", "tesu", "test%", 10);
+
+        var plan = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+                    statement.setObject(i, parameters.get(i - 1));
+                }
+                try (var resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+
+        // A range of the index, in the order of the index (no sort)
+        assertTrue(plan.toUpperCase().contains("IDX_BOOKS_TITLE_NORMALIZED:"), plan);
+        assertTrue(plan.toUpperCase().contains("INDEX SORTED"), plan);
+    }
+
+    @Test
+    void testPrefixUpperBound() {
+        assertEquals("abd", BookRepository.prefixUpperBound("abc"));
+        assertEquals("a" + Character.toString(0x10000), BookRepository.prefixUpperBound("a\uFFFF"));
+        assertEquals("a\uE000", BookRepository.prefixUpperBound("a\uD7FF"));
+        assertEquals(Character.toString(0x1F601), BookRepository.prefixUpperBound(Character.toString(0x1F600)));
+        assertEquals("b", BookRepository.prefixUpperBound("a" + Character.toString(Character.MAX_CODE_POINT)));
+        assertNull(BookRepository.prefixUpperBound(Character.toString(Character.MAX_CODE_POINT)));
+    }
+
+    @Test
+    void testSecondLevelCache() {
+
+        var id = bookRepository.create(books.get(2)).getId();
+
+        // Every transaction has its own session, so after the first one the book can only come from the second-level cache
+        Supplier<Integer> findAuthorsNumber = () -> QuarkusTransaction.requiringNew()
+                .call(() -> bookRepository.findById(id).getAuthors().size());
+
+        assertEquals(2, findAuthorsNumber.get());
+
+        var statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, findAuthorsNumber.get());
+        }
+
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(3, statistics.getDomainDataRegionStatistics(Book.class.getName()).getHitCount());
+    }
+
     @Test
     @Transactional
     void testUpdate() {
@@ -117,6 +266,132 @@ class BookRepositoryTest {
         }
     }
 
+    @Test
+    void testDeleteByFilter() {
+
+        books.forEach(bookRepository::create);
+
+        var statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        // Books 4 and 5 have the authors 1, 2, 3 and 4, of which only author 4 has no other book
+        var result = bookRepository.deleteByFilter(new BookFilter(List.of(books.get(3).getId(), books.get(4).getId()), null, null));
+
+        assertEquals(new BulkResult(2, 1), result);
+        assertEquals(0, statistics.getEntityStatistics(Book.class.getName()).getLoadCount());
+        assertEquals(3, bookRepository.count());
+        assertEquals(List.of("test author 1", "test author 2", "test author 3"),
+                authorRepository.listAll().stream().map(Author::getName).sorted().toList());
+
+        result = bookRepository.deleteByFilter(new BookFilter(null, null, "test author 2"));
+        assertEquals(new BulkResult(1, 2), result);
+        assertEquals(List.of("test book 1", "test book 2"),
+                bookRepository.listAll().stream().map(Book::getTitle).sorted().toList());
+
+        assertEquals(new BulkResult(0, 0), bookRepository.deleteByFilter(new BookFilter(null, 1111, "test author 1")));
+        assertThrows(IllegalArgumentException.class, () -> bookRepository.deleteByFilter(new BookFilter(List.of(), null, " ")));
+    }
+
+    @Test
+    void testUpdateByFilter() {
+
+        books.forEach(bookRepository::create);
+        var ids = List.of(books.get(2).getId(), books.get(3).getId());
+
+        var statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        var result = bookRepository.updateByFilter(new BookFilter(ids, null, null),
+                new BulkUpdate(2024, List.of("test author 4", "new author"), List.of("test author 2")));
+
+        // Author 2 had no other books
+        assertEquals(new BulkResult(2, 1), result);
+        assertEquals(0, statistics.getEntityStatistics(Book.class.getName()).getLoadCount());
+        assertEquals(0L, authorRepository.count("name", "test author 2"));
+
+        var booksUpdated = bookRepository.findByFilter(new BookFilter(ids, null, null));
+        assertEquals(List.of(2024, 2024), booksUpdated.stream().map(BookDto::year).toList());
+        assertEquals(List.of("new author", "test author 3", "test author 4"), booksUpdated.get(0).authors());
+        assertEquals(List.of("new author", "test author 1", "test author 4"), booksUpdated.get(1).authors());
+        assertEquals(List.of(1L, 1L), booksUpdated.stream().map(BookDto::version).toList());
+
+        result = bookRepository.updateByFilter(new BookFilter(null, 2024, null), new BulkUpdate(null, null, List.of("new author")));
+        assertEquals(new BulkResult(2, 1), result);
+        assertEquals(0L, authorRepository.count("name", "new author"));
+    }
+
+    @Test
+    void testFindByNormalizedTitleReturnsLeastId() {
+
+        books.forEach(bookRepository::create);
+        bookRepository.create(new Book(null, "TEST BOOK 1", 9999, new HashSet<>()));
+        bookRepository.create(new Book(null, "test book 1", 8888, new HashSet<>()));
+
+        assertEquals(books.getFirst().getId(), bookRepository.findByNormalizedTitleForRead("test book 1").getId());
+        assertEquals(books.getFirst().getId(), bookRepository.findByTitleForRead("test book 1").getId());
+    }
+
+    // The change log entries persisted with the books must not split their inserts into batches of one
+    @Test
+    void testCreateAllBatchesInserts() {
+
+        // Also reads the last id of the change log, which happens once
+        books.forEach(bookRepository::create);
+
+        var newBooks = IntStream.range(0, 20)
+                .mapToObj(i -> new Book(null, "batched book " + i, 2000, new HashSet<>(Set.of(new Author(null, "batched author", new ArrayList<>())))))
+                .toList();
+
+        statementInspector.clear();
+        bookRepository.createAll(newBooks);
+
+        // The inspector sees one statement per JDBC batch
+        var statements = statementInspector.getStatements();
+        assertEquals(1, statements.stream().filter(sql -> sql.startsWith("insert into books ")).count(), String.join("\n", statements));
+        assertEquals(1, statements.stream().filter(sql -> sql.startsWith("insert into book_changes ")).count(), String.join("\n", statements));
+        assertEquals(1, statements.stream().filter(sql -> sql.startsWith("insert into book_author ")).count(), String.join("\n", statements));
+        assertEquals(20, bookRepository.count("year", 2000));
+    }
+
+    @Test
+    void testFindByFilterChunksIds() {
+
+        books.forEach(bookRepository::create);
+
+        // Unknown ids sort first, so the books are only found in the last chunk
+        var ids = new ArrayList<Long>();
+        for (long id = -2500; id < 0; id++) {
+            ids.add(id);
+        }
+        books.forEach(book -> ids.add(book.getId()));
+
+        statementInspector.clear();
+        var booksFound = bookRepository.findByFilter(new BookFilter(ids, null, null));
+
+        assertEquals(books.stream().map(Book::getId).toList(), booksFound.stream().map(BookDto::id).toList());
+        var maxParameters = statementInspector.getStatements().stream()
+                .mapToLong(sql -> sql.chars().filter(c -> c == '?').count())
+                .max()
+                .orElseThrow();
+        // A chunk of 1000 ids, padded to 1024 parameters by Quarkus, and the row limit
+        assertTrue(maxParameters <= 1025, "Statement with " + maxParameters + " parameters");
+    }
+
+    @Test
+    void testBulkChangeOfTooManyBooks() {
+
+        // One more book than 'books.bulk.max-books'
+        QuarkusTransaction.requiringNew().run(() -> entityManager.createNativeQuery(
+                        "insert into books (id, title, title_normalized, publish_year, version) "
+                                + "select -x, 'test book ' || x, 'test book ' || x, 1999, 0 from system_range(1, 10001)")
+                .executeUpdate());
+
+        var filter = new BookFilter(null, 1999, null);
+        assertThrows(IllegalArgumentException.class, () -> bookRepository.updateByFilter(filter, new BulkUpdate(2000, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> bookRepository.deleteByFilter(filter));
+        assertEquals(10001, bookRepository.count("year", 1999));
+    }
+
     @Test
     void testUpdateIdNotFound() {
         var id = -1L;
@@ -0,0 +1,156 @@
+package org.example.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.agroal.DataSource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.example.model.Book;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+// The replica is a second in-memory database, and replication is played by writing to it directly:
+// it has a book the primary hasn't, which tells where a read was served from
+@QuarkusTest
+@TestProfile(ReadReplicaTest.ReplicaEnabled.class)
+class ReadReplicaTest {
+
+    public static class ReplicaEnabled implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("books.replica.enabled", "true");
+        }
+    }
+
+    @Inject
+    BookRepository bookRepository;
+
+    @Inject
+    @DataSource("replica")
+    AgroalDataSource replica;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        bookRepository.create(new Book(null, "primary book", 1111, new HashSet<>()));
+        updateReplica("insert into books (id, title, title_normalized, publish_year, version) values (-1, 'replica book', 'replica book', 2222, 0)");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        bookRepository.deleteAll();
+        updateReplica("delete from books");
+        updateReplica("delete from book_changes");
+    }
+
+    @Test
+    void testReadsFromReplica() {
+
+        var replicaReads = meterRegistry.counter("books.replica.reads", "datasource", "replica").count();
+
+        when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .body("items.title", Matchers.contains("replica book"));
+
+        when()
+                .get("/books/-1")
+        .then()
+                .statusCode(200)
+                .body("title", equalTo("replica book"));
+
+        when()
+                .get("/books/search?prefix=Repl")
+        .then()
+                .statusCode(200)
+                .body("title", Matchers.contains("replica book"));
+
+        when()
+                .get("/authors")
+        .then()
+                .statusCode(200)
+                .body("items", Matchers.empty());
+
+        assertTrue(meterRegistry.counter("books.replica.reads", "datasource", "replica").count() >= replicaReads + 4);
+    }
+
+    @Test
+    void testReadYourWrites() throws SQLException {
+
+        var lastChange = given()
+                .contentType("application/json")
+                .body("{\"title\":\"new book\",\"year\":3333,\"authors\":[]}")
+        .when()
+                .post("/books")
+        .then()
+                .statusCode(200)
+                .extract()
+                .cookie("books-read-after");
+        assertNotNull(lastChange);
+
+        // Not replicated yet, so the writer reads from the primary, and the others still from the replica
+        given()
+                .cookie("books-read-after", lastChange)
+        .when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .body("items.title", Matchers.contains("primary book", "new book"));
+
+        when()
+                .get("/books")
+        .then()
+                .body("items.title", Matchers.contains("replica book"));
+
+        updateReplica("insert into book_changes (id, book_id, change_type, changed_at) values (" + lastChange + ", 1, 'CREATED', current_timestamp)");
+
+        given()
+                .cookie("books-read-after", lastChange)
+        .when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .body("items.title", Matchers.contains("replica book"));
+    }
+
+    @Test
+    void testFallbackToPrimary() throws SQLException {
+
+        var fallbacks = meterRegistry.counter("books.replica.fallbacks").count();
+
+        updateReplica("alter table books rename to books_offline");
+        try {
+            when()
+                    .get("/books")
+            .then()
+                    .statusCode(200)
+                    .body("items.title", Matchers.contains("primary book"));
+        } finally {
+            updateReplica("alter table books_offline rename to books");
+        }
+
+        assertEquals(fallbacks + 1, meterRegistry.counter("books.replica.fallbacks").count());
+    }
+
+    private void updateReplica(String sql) throws SQLException {
+        try (var connection = replica.getConnection(); var statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+}
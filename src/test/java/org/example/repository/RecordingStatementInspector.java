@@ -0,0 +1,37 @@
+package org.example.repository;
+
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+// Records the SQL of the statements Hibernate prepares (one per JDBC batch for batched statements),
+// so that tests can check the statements it actually generates
+@PersistenceUnitExtension
+@ApplicationScoped
+public class RecordingStatementInspector implements StatementInspector {
+
+    private static final int MAX_STATEMENTS = 1000;
+
+    private final ConcurrentLinkedDeque<String> statements = new ConcurrentLinkedDeque<>();
+
+    @Override
+    public String inspect(String sql) {
+        statements.addLast(sql);
+        if (statements.size() > MAX_STATEMENTS) {
+            statements.pollFirst();
+        }
+        return sql;
+    }
+
+    public void clear() {
+        statements.clear();
+    }
+
+    public List<String> getStatements() {
+        return new ArrayList<>(statements);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.resource;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectSpy;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.example.model.Author;
+import org.example.model.Book;
+import org.example.repository.AuthorRepository;
+import org.example.repository.BookRepository;
+import org.example.service.AuthorService;
+import org.hamcrest.Matchers;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@QuarkusTest
+class AuthorResourceTest {
+
+    @InjectSpy
+    AuthorService authorService;
+
+    @Inject
+    BookRepository bookRepository;
+
+    @Inject
+    AuthorRepository authorRepository;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    private List<Book> books;
+    private List<Long> authorIds;
+
+    @BeforeEach
+    void setUp() {
+
+        var authors = List.of(
+                new Author(null, "test author 1", new ArrayList<>()),
+                new Author(null, "test author 2", new ArrayList<>()),
+                new Author(null, "test author 3", new ArrayList<>())
+        );
+
+        books = List.of(
+                new Book(null, "test book 1", 1111, new HashSet<>(Set.of(authors.get(0)))),
+                new Book(null, "test book 2", 2222, new HashSet<>(Set.of(authors.get(0), authors.get(1)))),
+                new Book(null, "test book 3", 3333, new HashSet<>(Set.of(authors.get(0)))),
+                new Book(null, "test book 4", 4444, new HashSet<>(Set.of(authors.get(1))))
+        );
+
+        books.forEach(bookRepository::create);
+        authorRepository.insertMissing(List.of("test author 3"));
+
+        authorIds = authorRepository.listAll().stream()
+                .sorted((a, b) -> a.getName().compareTo(b.getName()))
+                .map(Author::getId)
+                .toList();
+    }
+
+    @AfterEach
+    @Transactional
+    void tearDown() {
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+    }
+
+    @Test
+    void testGetAll() {
+
+        var statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        when()
+                .get("/authors")
+        .then()
+                .statusCode(200)
+                .body("items.name", Matchers.contains("test author 1", "test author 2", "test author 3"))
+                .body("items.books", Matchers.contains(3, 2, 0))
+                .body("nextCursor", nullValue());
+
+        // The books of all the authors are counted by the same query
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        verify(authorService, times(1)).getAll(null, null);
+    }
+
+    @Test
+    void testGetAllPaginated() {
+
+        when()
+                .get("/authors?limit=2")
+        .then()
+                .statusCode(200)
+                .body("items.name", Matchers.contains("test author 1", "test author 2"))
+                .body("nextCursor", equalTo(authorIds.get(1).intValue()));
+
+        when()
+                .get("/authors?limit=2&after=" + authorIds.get(1))
+        .then()
+                .statusCode(200)
+                .body("items.name", Matchers.contains("test author 3"))
+                .body("nextCursor", nullValue());
+    }
+
+    @Test
+    void testGetBooks() {
+
+        var authorId = authorIds.getFirst();
+
+        when()
+                .get("/authors/" + authorId + "/books?limit=2")
+        .then()
+                .statusCode(200)
+                .body("items.title", Matchers.contains("test book 1", "test book 2"))
+                .body("items[1].authors", Matchers.contains("test author 1", "test author 2"))
+                .body("nextCursor", equalTo(books.get(1).getId().intValue()));
+
+        when()
+                .get("/authors/" + authorId + "/books?limit=2&after=" + books.get(1).getId())
+        .then()
+                .statusCode(200)
+                .body("items.title", Matchers.contains("test book 3"))
+                .body("nextCursor", nullValue());
+
+        when()
+                .get("/authors/" + authorIds.get(2) + "/books")
+        .then()
+                .statusCode(200)
+                .body("items", Matchers.empty());
+    }
+
+    @Test
+    void testGetBooksAuthorNotFound() {
+
+        when()
+                .get("/authors/-1/books")
+        .then()
+                .statusCode(404);
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.resource;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.example.repository.AuthorRepository;
+import org.example.repository.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+// An import larger than 'quarkus.http.limits.max-body-size' is rejected as a whole, and has to be split
+@QuarkusTest
+@TestProfile(BookImportBodyLimitTest.SmallBodies.class)
+class BookImportBodyLimitTest {
+
+    private static final int MAX_BODY_SIZE = 4096;
+
+    public static class SmallBodies implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.http.limits.max-body-size", String.valueOf(MAX_BODY_SIZE));
+        }
+    }
+
+    @Inject
+    BookRepository bookRepository;
+
+    @Inject
+    AuthorRepository authorRepository;
+
+    @AfterEach
+    @Transactional
+    void tearDown() {
+        bookRepository.deleteAll();
+        authorRepository.delete("name like 'limit author %'");
+    }
+
+    @Test
+    void testImportLargerThanTheBodyLimit() {
+
+        var ndjson = ndjson(0, 100);
+        assertTrue(ndjson.length > MAX_BODY_SIZE);
+
+        given()
+                .contentType("application/x-ndjson")
+                .body(ndjson)
+        .when()
+                .post("/books/bulk")
+        .then()
+                .statusCode(413);
+
+        assertEquals(0L, bookRepository.count("title like 'limit book %'"));
+
+        // The same books in requests under the limit
+        for (var from = 0; from < 100; from += 25) {
+            var part = ndjson(from, from + 25);
+            assertTrue(part.length <= MAX_BODY_SIZE);
+
+            given()
+                    .contentType("application/x-ndjson")
+                    .body(part)
+            .when()
+                    .post("/books/bulk")
+            .then()
+                    .statusCode(200)
+                    .body("created", equalTo(25));
+        }
+
+        assertEquals(100L, bookRepository.count("title like 'limit book %'"));
+    }
+
+    private static byte[] ndjson(int from, int to) {
+        var ndjson = new StringBuilder();
+        for (var i = from; i < to; i++) {
+            ndjson.append("{\"title\":\"limit book ").append(i)
+                    .append("\",\"year\":2000,\"authors\":[\"limit author ").append(i % 10).append("\"]}\n");
+        }
+        return ndjson.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -2,29 +2,59 @@ package org.example.resource;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.common.http.TestHTTPResource;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.mockito.InjectSpy;
+import io.restassured.common.mapper.TypeRef;
 import jakarta.inject.Inject;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import jakarta.transaction.Transactional;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import org.example.dto.BookDto;
+import org.example.dto.CursorPage;
 import org.example.model.Author;
 import org.example.model.Book;
+import org.example.repository.AuthorRepository;
+import org.example.repository.BookChangeLogRepository;
+import org.example.repository.BookRepository;
+import org.example.service.BookChangeStream;
+import org.example.service.BookFacetCounters;
+import org.example.service.BookIngestionQueue;
 import org.example.service.BookService;
 import org.hamcrest.Matchers;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -34,9 +64,36 @@ class BookResourceTest {
     @InjectSpy
     BookService bookService;
 
+    @InjectSpy
+    BookIngestionQueue bookIngestionQueue;
+
+    @Inject
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Inject
+    BookFacetCounters bookFacetCounters;
+
+    @Inject
+    BookChangeStream bookChangeStream;
+
+    @TestHTTPResource("/books/stream")
+    URI streamUri;
+
+    @Inject
+    BookRepository bookRepository;
+
+    @Inject
+    BookChangeLogRepository bookChangeLogRepository;
+
     @Inject
     ObjectMapper objectMapper;
 
+    @Inject
+    AuthorRepository authorRepository;
+
+    @Inject
+    SessionFactory sessionFactory;
+
     private List<Book> books;
 
     @BeforeEach
@@ -58,7 +115,7 @@ class BookResourceTest {
         );
 
         books.forEach(bookService::create);
-        assertFalse(bookService.getAll().isEmpty());
+        assertFalse(bookService.getAll(null, null).items().isEmpty());
 
         Mockito.clearInvocations(bookService);
     }
@@ -67,15 +124,15 @@ class BookResourceTest {
     @Transactional
     void tearDown() {
         books.forEach(book -> bookService.deleteById(book.getId()));
-        for (var book : bookService.getAll()) {
-            bookService.deleteById(book.getId());
+        for (var book : bookService.getAll(null, null).items()) {
+            bookService.deleteById(book.id());
         }
     }
 
     @Test
     void testGetAll() throws JsonProcessingException {
 
-        var jsonExpected = objectMapper.writeValueAsString(books);
+        var jsonExpected = objectMapper.writeValueAsString(new CursorPage<>(toDtos(books), null));
 
         when()
                 .get("/books")
@@ -83,7 +140,96 @@ class BookResourceTest {
                 .statusCode(200)
                 .body(equalTo(jsonExpected));
 
-        verify(bookService, times(1)).getAll();
+        verify(bookService, times(1)).getAll(null, null);
+    }
+
+    @Test
+    void testGetAllPaginated() throws JsonProcessingException {
+
+        var jsonExpected = objectMapper.writeValueAsString(new CursorPage<>(toDtos(books.subList(0, 2)), books.get(1).getId()));
+
+        when()
+                .get("/books?limit=2")
+        .then()
+                .statusCode(200)
+                .body(equalTo(jsonExpected));
+
+        var after = books.get(1).getId();
+        jsonExpected = objectMapper.writeValueAsString(new CursorPage<>(toDtos(books.subList(2, 5)), null));
+
+        when()
+                .get("/books?limit=3&after=" + after)
+        .then()
+                .statusCode(200)
+                .body(equalTo(jsonExpected));
+
+        verify(bookService, times(1)).getAll(null, 2);
+        verify(bookService, times(1)).getAll(after, 3);
+    }
+
+    @Test
+    void testGetAllQueriesPerRequest() {
+
+        var statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .body("items.authors[2]", Matchers.contains("test author 2", "test author 3"));
+
+        // One query for the page of books and one for the authors of all of them
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void testExportNdjson() throws JsonProcessingException {
+
+        var lines = when()
+                .get("/books/export?format=ndjson")
+        .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract()
+                .asString()
+                .lines()
+                .toList();
+
+        assertEquals(books.size(), lines.size());
+
+        var bookExported = objectMapper.readValue(lines.get(2), BookDto.class);
+        assertEquals(books.get(2).getId(), bookExported.id());
+        assertEquals(books.get(2).getTitle(), bookExported.title());
+        assertEquals(List.of("test author 2", "test author 3"), bookExported.authors());
+    }
+
+    @Test
+    void testExportCsv() {
+
+        var lines = when()
+                .get("/books/export?format=csv")
+        .then()
+                .statusCode(200)
+                .contentType("text/csv")
+                .extract()
+                .asString()
+                .lines()
+                .toList();
+
+        assertEquals(books.size() + 1, lines.size());
+        assertEquals("id,title,year,authors", lines.getFirst());
+        assertEquals(books.getFirst().getId() + ",test book 1,1111,", lines.get(1));
+        assertEquals(books.get(2).getId() + ",test book 3,3333,test author 2;test author 3", lines.get(3));
+    }
+
+    @Test
+    void testExportUnknownFormat() {
+        when()
+                .get("/books/export?format=xml")
+        .then()
+                .statusCode(400);
     }
 
     @Test
@@ -105,6 +251,198 @@ class BookResourceTest {
         verify(bookService, times(books.size())).getById(anyLong());
     }
 
+    @Test
+    void testGetByIdFromMemory() throws JsonProcessingException {
+
+        var book = books.getFirst();
+        var jsonExpected = objectMapper.writeValueAsString(book);
+
+        for (int i = 0; i < 3; i++) {
+            when()
+                    .get("/books/" + book.getId())
+            .then()
+                    .statusCode(200)
+                    .body(equalTo(jsonExpected));
+        }
+
+        // Only the first request goes to the database, the others are answered from the cache
+        verify(bookService, times(3)).getCachedById(book.getId());
+        verify(bookService, times(1)).getById(book.getId());
+    }
+
+    @Test
+    void testMetrics() {
+
+        when()
+                .get("/books/" + books.getLast().getId())
+        .then()
+                .statusCode(200);
+
+        var queriesBefore = metricValue("books_request_queries_sum{class=\"BookResource\",method=\"getAll\"}");
+
+        // A page always takes two statements
+        when()
+                .get("/books?limit=2")
+        .then()
+                .statusCode(200);
+
+        assertEquals(queriesBefore + 2, metricValue("books_request_queries_sum{class=\"BookResource\",method=\"getAll\"}"));
+
+        when()
+                .get("/q/metrics")
+        .then()
+                .statusCode(200)
+                .body(Matchers.containsString("http_server_requests_seconds_bucket{"),
+                        Matchers.containsString("uri=\"/books/{id}\""),
+                        Matchers.containsString("books_request_queries_count{class=\"BookResource\",method=\"getById\"}"),
+                        Matchers.containsString("books_request_queries_time_seconds_count{class=\"BookResource\",method=\"getById\"}"),
+                        Matchers.containsString("books_authors_resolved_total{result=\"created\"}"),
+                        Matchers.containsString("books_authors_resolved_total{result=\"found\"}"),
+                        Matchers.containsString("cache_gets_total{cache=\"books-by-id\""),
+                        Matchers.containsString("hibernate_sessions_open_total"),
+                        Matchers.containsString("agroal_active_count"));
+    }
+
+    @Test
+    void testGetByIdConditional() {
+
+        var book = books.get(1);
+        var eTag = "\"" + book.getId() + "-" + book.getVersion() + "\"";
+
+        // Not cached yet: only the version is read, the book isn't loaded
+        given()
+                .header("If-None-Match", eTag)
+        .when()
+                .get("/books/" + book.getId())
+        .then()
+                .statusCode(304)
+                .header("ETag", eTag)
+                .body(Matchers.emptyString());
+
+        verify(bookService, never()).getById(book.getId());
+
+        var lastModified =
+                when()
+                        .get("/books/" + book.getId())
+                .then()
+                        .statusCode(200)
+                        .header("ETag", eTag)
+                        .header("Last-Modified", Matchers.notNullValue())
+                        .extract()
+                        .header("Last-Modified");
+
+        // Cached now
+        given()
+                .header("If-None-Match", eTag)
+        .when()
+                .get("/books/" + book.getId())
+        .then()
+                .statusCode(304);
+
+        given()
+                .header("If-Modified-Since", lastModified)
+        .when()
+                .get("/books/" + book.getId())
+        .then()
+                .statusCode(304);
+
+        given()
+                .header("If-None-Match", "\"" + book.getId() + "-" + (book.getVersion() + 1) + "\"")
+        .when()
+                .get("/books/" + book.getId())
+        .then()
+                .statusCode(200);
+
+        verify(bookService, times(1)).getById(book.getId());
+    }
+
+    @Test
+    void testGetAllConditional() {
+
+        var eTag =
+                when()
+                        .get("/books")
+                .then()
+                        .statusCode(200)
+                        .header("ETag", Matchers.notNullValue())
+                        .extract()
+                        .header("ETag");
+
+        given()
+                .header("If-None-Match", eTag)
+        .when()
+                .get("/books")
+        .then()
+                .statusCode(304)
+                .body(Matchers.emptyString());
+
+        bookService.deleteById(books.getFirst().getId());
+
+        given()
+                .header("If-None-Match", eTag)
+        .when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .header("ETag", Matchers.not(eTag));
+    }
+
+    @Test
+    void testGetByIdFromJsonCache() throws JsonProcessingException {
+
+        var book = books.get(3);
+        var jsonExpected = objectMapper.writeValueAsString(book);
+        var hitsBefore = jsonCacheHits();
+
+        for (int i = 0; i < 3; i++) {
+            when()
+                    .get("/books/" + book.getId())
+            .then()
+                    .statusCode(200)
+                    .contentType("application/json")
+                    .body(equalTo(jsonExpected));
+        }
+
+        assertEquals(hitsBefore + 2, jsonCacheHits());
+
+        // A new version is encoded again
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1000}")
+        .when()
+                .patch("/books/" + book.getId())
+        .then()
+                .statusCode(200);
+
+        when()
+                .get("/books/" + book.getId())
+        .then()
+                .statusCode(200)
+                .body("year", equalTo(1000))
+                .body("version", equalTo((int) (book.getVersion() + 1)));
+    }
+
+    @Test
+    void testCompression() {
+
+        given()
+                .header("Accept-Encoding", "gzip")
+        .when()
+                .get("/books")
+        .then()
+                .statusCode(200)
+                .header("Content-Encoding", "gzip")
+                .body("items", Matchers.hasSize(books.size()));
+
+        given()
+                .header("Accept-Encoding", "gzip")
+        .when()
+                .get("/books/" + books.getFirst().getId())
+        .then()
+                .statusCode(200)
+                .header("Content-Encoding", Matchers.nullValue());
+    }
+
     @Test
     void testGetByIdNotFound() {
 
@@ -137,6 +475,82 @@ class BookResourceTest {
         verify(bookService, times(books.size())).getByTitle(anyString());
     }
 
+    @Test
+    void testGetByTitleIgnoreCase() throws JsonProcessingException {
+
+        var book = books.get(3);
+        var jsonExpected = objectMapper.writeValueAsString(book);
+
+        when()
+                .get("/books/title/" + book.getTitle().toUpperCase() + "?ignoreCase=true")
+        .then()
+                .statusCode(200)
+                .body(equalTo(jsonExpected));
+
+        when()
+                .get("/books/title/" + book.getTitle().toUpperCase())
+        .then()
+                .body(Matchers.emptyString());
+    }
+
+    @Test
+    void testSearchByTitlePrefix() throws JsonProcessingException {
+
+        var jsonExpected = objectMapper.writeValueAsString(toDtos(books.subList(0, 3)));
+
+        when()
+                .get("/books/search?prefix=Test Book&limit=3")
+        .then()
+                .statusCode(200)
+                .body(equalTo(jsonExpected));
+
+        when()
+                .get("/books/search")
+        .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void testSearchFullText() throws JsonProcessingException {
+
+        // Books 3 and 5 match every word, book 3 by its title and author, book 5 by its author
+        var jsonExpected = objectMapper.writeValueAsString(toDtos(List.of(books.get(2), books.get(4))));
+
+        when()
+                .get("/books/fulltext?q=Test Author 3&limit=2")
+        .then()
+                .statusCode(200)
+                .body(equalTo(jsonExpected));
+
+        // The last word may be unfinished
+        when()
+                .get("/books/fulltext?q=autho 4&limit=2")
+        .then()
+                .statusCode(200)
+                .body("id", Matchers.contains(books.get(3).getId().intValue(), books.get(4).getId().intValue()));
+
+        when()
+                .get("/books/fulltext/stats")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(books.size()))
+                .body("estimatedBytesPerBook", Matchers.greaterThan(0));
+
+        bookService.deleteById(books.get(2).getId());
+
+        when()
+                .get("/books/fulltext?q=Test Author 3&limit=1")
+        .then()
+                .statusCode(200)
+                .body("id", Matchers.contains(books.get(4).getId().intValue()));
+
+        when()
+                .get("/books/fulltext?q=-")
+        .then()
+                .statusCode(200)
+                .body(equalTo("[]"));
+    }
+
     @Test
     void testGetByTitleNotFound() {
 
@@ -185,6 +599,152 @@ class BookResourceTest {
         verify(bookService, times(1)).create(book);
     }
 
+    @Test
+    void testCreateAsync() throws InterruptedException {
+
+        var trackingId =
+                given()
+                        .contentType("application/json")
+                        .body("{\"title\":\"queued book\",\"year\":1234,\"authors\":[{\"name\":\"queued author\"}]}")
+                .when()
+                        .post("/books?async=true")
+                .then()
+                        .statusCode(202)
+                        .header("Location", Matchers.containsString("/books/ingestion/"))
+                        .body("state", equalTo("QUEUED"))
+                        .extract()
+                        .<String>path("trackingId");
+
+        var status = awaitIngestion(trackingId);
+        assertEquals("CREATED", status.get("state"));
+
+        var book = bookService.getById(((Number) status.get("bookId")).longValue());
+        assertEquals("queued book", book.getTitle());
+        assertEquals(1L, authorRepository.count("name", "queued author"));
+
+        verify(bookService, never()).create(any(Book.class));
+    }
+
+    @Test
+    void testCreateAsyncFailed() throws InterruptedException {
+
+        var trackingId =
+                given()
+                        .contentType("application/json")
+                        .body("{\"title\":\"test book 1\",\"year\":1111}")
+                .when()
+                        .post("/books?async=true")
+                .then()
+                        .statusCode(202)
+                        .extract()
+                        .<String>path("trackingId");
+
+        var status = awaitIngestion(trackingId);
+        assertEquals("FAILED", status.get("state"));
+        assertNotNull(status.get("error"));
+
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1111}")
+        .when()
+                .post("/books?async=true")
+        .then()
+                .statusCode(400);
+
+        when()
+                .get("/books/ingestion/unknown")
+        .then()
+                .statusCode(404);
+    }
+
+    @Test
+    void testCreateAsyncQueueFull() {
+
+        Mockito.doThrow(new RejectedExecutionException("The ingestion queue is full"))
+                .when(bookIngestionQueue).submit(any(Book.class));
+
+        given()
+                .contentType("application/json")
+                .body("{\"title\":\"rejected book\"}")
+        .when()
+                .post("/books?async=true")
+        .then()
+                .statusCode(429)
+                .header("Retry-After", "1");
+    }
+
+    private Map<String, Object> awaitIngestion(String trackingId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> status = when()
+                    .get("/books/ingestion/" + trackingId)
+            .then()
+                    .statusCode(200)
+                    .extract()
+                    .as(new TypeRef<Map<String, Object>>() {});
+            if (!"QUEUED".equals(status.get("state"))) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        return fail("The book was not created in time");
+    }
+
+    @Test
+    void testImportBooks() {
+
+        var ndjson = """
+                {"title":"imported book 1","year":2001,"authors":["imported author 1","imported author 2"]}
+                {"title":"imported book 2","year":2002,"authors":["imported author 2"]}
+                {"year":2003}
+                {"title":"imported book 1","year":2001}
+                {"title":"imported book 3","year":2003,"authors":["imported author 1"]}
+                """;
+
+        given()
+                .contentType("application/x-ndjson")
+                .body(ndjson.getBytes(StandardCharsets.UTF_8))
+        .when()
+                .post("/books/bulk")
+        .then()
+                .statusCode(200)
+                .body("received", equalTo(5))
+                .body("created", equalTo(3))
+                .body("failed", equalTo(2))
+                .body("errors.index", Matchers.contains(2, 3));
+
+        var titles = bookService.getAll(null, null).items().stream()
+                .map(BookDto::title)
+                .toList();
+        assertTrue(titles.containsAll(List.of("imported book 1", "imported book 2", "imported book 3")));
+        assertEquals(2L, authorRepository.count("name like ?1", "imported author%"));
+
+        verify(bookService, never()).create(any(Book.class));
+    }
+
+    @Test
+    void testImportBooksFromJsonArray() {
+
+        var json = """
+                [
+                    {"title":"imported book 4","year":2004,"authors":["imported author 4"]},
+                    {"title":"imported book 5","year":2005,"authors":["imported author 4"]}
+                ]
+                """;
+
+        given()
+                .contentType("application/json")
+                .body(json)
+        .when()
+                .post("/books/bulk")
+        .then()
+                .statusCode(200)
+                .body("received", equalTo(2))
+                .body("created", equalTo(2))
+                .body("failed", equalTo(0));
+
+        assertEquals(1L, authorRepository.count("name", "imported author 4"));
+    }
+
     @Test
     void testUpdate() throws JsonProcessingException {
 
@@ -216,10 +776,50 @@ class BookResourceTest {
             assertEquals(id, bookUpdated.getId());
             assertEquals(book, bookUpdated);
 
-            verify(bookService, times(1)).update(id, book);
+            verify(bookService, times(1)).update(id, book, null);
         }
 
-        verify(bookService, times(books.size())).update(anyLong(), any(Book.class));
+        verify(bookService, times(books.size())).update(anyLong(), any(Book.class), isNull());
+    }
+
+    @Test
+    void testUpdateIfMatch() {
+
+        var book = books.get(2);
+        var id = book.getId();
+        var version = book.getVersion();
+
+        given()
+                .contentType("application/json")
+                .header("If-Match", "\"" + id + "-" + version + "\"")
+                .body("{\"year\":1000}")
+        .when()
+                .patch("/books/" + id)
+        .then()
+                .statusCode(200)
+                .header("ETag", "\"" + id + "-" + (version + 1) + "\"")
+                .body("version", equalTo((int) (version + 1)));
+
+        // The update above is lost for a client that still has the old version
+        given()
+                .contentType("application/json")
+                .header("If-Match", "\"" + id + "-" + version + "\"")
+                .body("{\"year\":2000}")
+        .when()
+                .patch("/books/" + id)
+        .then()
+                .statusCode(412);
+
+        given()
+                .contentType("application/json")
+                .header("If-Match", "\"" + books.get(3).getId() + "-" + (version + 1) + "\"")
+                .body("{\"year\":2000}")
+        .when()
+                .patch("/books/" + id)
+        .then()
+                .statusCode(412);
+
+        assertEquals(1000, bookService.getById(id).getYear());
     }
 
     @Test
@@ -238,13 +838,13 @@ class BookResourceTest {
         .then()
                 .statusCode(500);
 
-        verify(bookService, times(1)).update(id, book);
+        verify(bookService, times(1)).update(id, book, null);
     }
 
     @Test
     void testDeleteById() {
 
-        assertFalse(bookService.getAll().isEmpty());
+        assertFalse(bookService.getAll(null, null).items().isEmpty());
 
         for (var book : books) {
 
@@ -259,6 +859,503 @@ class BookResourceTest {
         }
 
         verify(bookService, times(books.size())).deleteById(anyLong());
-        assertTrue(bookService.getAll().isEmpty());
+        assertTrue(bookService.getAll(null, null).items().isEmpty());
+    }
+
+    @Test
+    void testUpdateAll() {
+
+        var id = books.get(1).getId();
+
+        // Cached before the change
+        when()
+                .get("/books/" + id)
+        .then()
+                .statusCode(200)
+                .body("year", equalTo(2222));
+        when()
+                .get("/books/fulltext?q=bulk")
+        .then()
+                .body("size()", equalTo(0));
+
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1999,\"addAuthors\":[\"bulk author\"]}")
+        .when()
+                .patch("/books?author=test author 1")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(2))
+                .body("authorsDeleted", equalTo(0));
+
+        when()
+                .get("/books/" + id)
+        .then()
+                .statusCode(200)
+                .body("year", equalTo(1999))
+                .body("version", equalTo(1));
+        when()
+                .get("/books/fulltext?q=bulk")
+        .then()
+                .body("id", Matchers.containsInAnyOrder(id.intValue(), books.get(3).getId().intValue()));
+
+        // Ids given as a repeated parameter
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1999}")
+        .when()
+                .patch("/books?ids=" + books.getFirst().getId() + "&ids=" + id)
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(2));
+
+        given()
+                .contentType("application/json")
+                .body("{}")
+        .when()
+                .patch("/books?year=1999")
+        .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void testUpdateAllConflict() {
+
+        var id = books.getFirst().getId();
+        var sameTitle = bookService.create(new Book(null, "test book 1", 1000, new HashSet<>()));
+
+        // Both books would be 'test book 1' of 1999
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1999,\"addAuthors\":[\"bulk author\"]}")
+        .when()
+                .patch("/books?ids=" + id + "," + sameTitle.getId())
+        .then()
+                .statusCode(409);
+
+        // Nothing has changed
+        when()
+                .get("/books/" + id)
+        .then()
+                .statusCode(200)
+                .body("year", equalTo(1111))
+                .body("version", equalTo(0));
+        given()
+                .queryParam("q", "bulk")
+        .when()
+                .get("/books/fulltext")
+        .then()
+                .body("size()", equalTo(0));
+    }
+
+    @Test
+    void testDeleteAll() {
+
+        var id = books.get(2).getId();
+
+        when()
+                .get("/books/" + id)
+        .then()
+                .statusCode(200);
+
+        when()
+                .delete("/books?ids=" + id + "," + books.get(4).getId())
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(2))
+                .body("authorsDeleted", equalTo(2));
+
+        when()
+                .get("/books/" + id)
+        .then()
+                .statusCode(204);
+
+        when()
+                .delete("/books?year=1111")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(1));
+
+        when()
+                .delete("/books")
+        .then()
+                .statusCode(400);
+
+        assertEquals(List.of("test book 2", "test book 4"), bookService.getAll(null, null).items().stream()
+                .map(BookDto::title)
+                .toList());
+    }
+
+    @Test
+    void testFacets() {
+
+        // Starts from the database, whatever the earlier tests left in the counters
+        bookFacetCounters.reconcile();
+
+        when()
+                .get("/books/facets")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(5))
+                .body("years.year", Matchers.contains(1111, 2222, 3333, 4444, 5555))
+                .body("authors.author", Matchers.contains("test author 1", "test author 2", "test author 3", "test author 4"))
+                .body("authors.books", Matchers.contains(2, 2, 2, 1));
+
+        given()
+                .contentType("application/json")
+                .body("{\"year\":1111,\"addAuthors\":[\"test author 4\"]}")
+        .when()
+                .patch("/books?author=test author 1")
+        .then()
+                .statusCode(200);
+
+        bookService.deleteById(books.get(2).getId());
+
+        when()
+                .get("/books/facets?limit=2")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(4))
+                .body("years.year", Matchers.contains(1111, 5555))
+                .body("years.books", Matchers.contains(3, 1))
+                .body("authors.author", Matchers.contains("test author 4", "test author 1"))
+                .body("authors.books", Matchers.contains(3, 2));
+    }
+
+    @Test
+    void testFacetsReconciliation() {
+
+        bookFacetCounters.reconcile();
+        var drift = metricValue("books_facets_drift_total");
+
+        // Written past BookRepository, so no event is fired
+        QuarkusTransaction.requiringNew().run(() -> bookRepository.getEntityManager()
+                .createNativeQuery("insert into books (id, title, publish_year) values (1000000000, 'test book 6', 1111)")
+                .executeUpdate());
+
+        when()
+                .get("/books/facets")
+        .then()
+                .body("books", equalTo(5));
+
+        bookFacetCounters.reconcile();
+
+        when()
+                .get("/books/facets")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(6))
+                .body("years[0].year", equalTo(1111))
+                .body("years[0].books", equalTo(2));
+
+        // The number of books and the number of books of 1111
+        assertEquals(drift + 2, metricValue("books_facets_drift_total"));
+    }
+
+    // A reconciliation asked for once a book is committed, but before its event has been counted, waits for the
+    // event to be counted, and must not count the book twice
+    @Test
+    void testFacetsReconciliationDuringCommit() {
+
+        bookFacetCounters.reconcile();
+
+        var reconciliation = new CompletableFuture<Void>();
+        QuarkusTransaction.requiringNew().run(() -> {
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                // Runs once the transaction has committed, on another thread as this one is still in the transaction
+                @Override
+                public void afterCompletion(int status) {
+                    CompletableFuture.runAsync(bookFacetCounters::reconcile).whenComplete((result, e) -> {
+                        if (e == null) {
+                            reconciliation.complete(null);
+                        } else {
+                            reconciliation.completeExceptionally(e);
+                        }
+                    });
+                    assertThrows(TimeoutException.class, () -> reconciliation.get(200, TimeUnit.MILLISECONDS));
+                }
+            });
+            bookService.create(new Book(null, "test book 6", 1111, new HashSet<>()));
+        });
+        reconciliation.join();
+
+        when()
+                .get("/books/facets")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(6))
+                .body("years[0].year", equalTo(1111))
+                .body("years[0].books", equalTo(2));
+    }
+
+    // Writes of this instance that are pending while the database is counted don't keep the drift from being corrected
+    @Test
+    void testFacetsReconciliationWhileWritesArePending() {
+
+        bookFacetCounters.reconcile();
+        var drift = metricValue("books_facets_drift_total");
+
+        // Written past BookRepository, so no event is fired
+        QuarkusTransaction.requiringNew().run(() -> bookRepository.getEntityManager()
+                .createNativeQuery("insert into books (id, title, publish_year) values (1000000000, 'test book 6', 1111)")
+                .executeUpdate());
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            bookService.create(new Book(null, "test book 7", 1111, new HashSet<>()));
+            // Doesn't see the uncommitted book, which is counted when it commits
+            CompletableFuture.runAsync(bookFacetCounters::reconcile).join();
+        });
+
+        when()
+                .get("/books/facets")
+        .then()
+                .statusCode(200)
+                .body("books", equalTo(7))
+                .body("years[0].year", equalTo(1111))
+                .body("years[0].books", equalTo(3));
+
+        assertEquals(drift + 2, metricValue("books_facets_drift_total"));
+    }
+
+    @Test
+    void testChanges() {
+
+        long token = when()
+                .get("/books/changes")
+        .then()
+                .statusCode(200)
+                .body("changes", Matchers.empty())
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        var created = bookService.create(new Book(null, "test book 6", 6666, new HashSet<>()));
+        var id = books.getFirst().getId();
+        bookService.update(id, new Book(null, "test book 1 updated", 1111, new HashSet<>()));
+        bookService.update(id, new Book(null, "test book 1 updated twice", 1111, new HashSet<>()));
+        bookService.deleteById(books.get(1).getId());
+
+        // The two updates of the same book come as one
+        long tokenAfter = when()
+                .get("/books/changes?since=" + token)
+        .then()
+                .statusCode(200)
+                .body("changes.type", Matchers.contains("UPSERTED", "UPSERTED", "DELETED"))
+                .body("changes.id", Matchers.contains(created.getId().intValue(), id.intValue(), books.get(1).getId().intValue()))
+                .body("changes[1].book.title", equalTo("test book 1 updated twice"))
+                .body("changes[2].book", nullValue())
+                .body("more", equalTo(false))
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        when()
+                .get("/books/changes?since=" + tokenAfter)
+        .then()
+                .statusCode(200)
+                .body("changes", Matchers.empty())
+                .body("token", equalTo((int) tokenAfter));
+
+        long tokenOfPage = when()
+                .get("/books/changes?since=" + token + "&limit=2")
+        .then()
+                .statusCode(200)
+                .body("changes.id", Matchers.contains(created.getId().intValue(), id.intValue()))
+                // Books are sent as they are now
+                .body("changes[1].book.title", equalTo("test book 1 updated twice"))
+                .body("more", equalTo(true))
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        when()
+                .get("/books/changes?since=" + tokenOfPage + "&limit=2")
+        .then()
+                .statusCode(200)
+                .body("changes.id", Matchers.contains(id.intValue(), books.get(1).getId().intValue()))
+                .body("more", equalTo(false))
+                .body("token", equalTo((int) tokenAfter));
+    }
+
+    // A change that gets the lesser id but commits last comes after the changes already read, rather than before them
+    @Test
+    void testChangesCommittedLate() throws Exception {
+
+        long token = when()
+                .get("/books/changes")
+                .jsonPath()
+                .getLong("token");
+
+        var logged = new CountDownLatch(1);
+        var commit = new CountDownLatch(1);
+        var earlier = CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> {
+            bookService.create(new Book(null, "test book 6", 6666, new HashSet<>()));
+            logged.countDown();
+            try {
+                commit.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(logged.await(5, TimeUnit.SECONDS));
+
+        bookService.create(new Book(null, "test book 7", 7777, new HashSet<>()));
+
+        long tokenAfter = when()
+                .get("/books/changes?since=" + token)
+        .then()
+                .statusCode(200)
+                .body("changes.book.title", Matchers.contains("test book 7"))
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        commit.countDown();
+        earlier.get(5, TimeUnit.SECONDS);
+
+        when()
+                .get("/books/changes?since=" + tokenAfter)
+        .then()
+                .statusCode(200)
+                .body("changes.book.title", Matchers.contains("test book 6"));
+    }
+
+    // Another instance takes ids from blocks of the sequence of its own, so its changes can have lesser ids
+    // than the ones already read
+    @Test
+    void testChangesOfAnotherInstance() {
+
+        long token = when()
+                .get("/books/changes")
+                .jsonPath()
+                .getLong("token");
+
+        bookService.create(new Book(null, "test book 6", 6666, new HashSet<>()));
+
+        long tokenAfter = when()
+                .get("/books/changes?since=" + token)
+        .then()
+                .statusCode(200)
+                .body("changes.book.title", Matchers.contains("test book 6"))
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        var id = books.getFirst().getId();
+        QuarkusTransaction.requiringNew().run(() -> bookRepository.getEntityManager()
+                .createNativeQuery("insert into book_changes (id, book_id, change_type, changed_at) values (0, :bookId, 'UPDATED', current_timestamp)")
+                .setParameter("bookId", id)
+                .executeUpdate());
+
+        when()
+                .get("/books/changes?since=" + tokenAfter)
+        .then()
+                .statusCode(200)
+                .body("changes.type", Matchers.contains("UPSERTED"))
+                .body("changes.id", Matchers.contains(id.intValue()));
+    }
+
+    // A token older than the changes that are kept asks for a resync
+    @Test
+    void testChangesAfterRetention() {
+
+        long token = when()
+                .get("/books/changes")
+                .jsonPath()
+                .getLong("token");
+
+        bookService.create(new Book(null, "test book 6", 6666, new HashSet<>()));
+
+        long tokenAfter = when()
+                .get("/books/changes?since=" + token)
+        .then()
+                .statusCode(200)
+                .body("resync", equalTo(false))
+                .extract()
+                .jsonPath()
+                .getLong("token");
+
+        // Every change up to now is past the retention
+        assertTrue(bookChangeLogRepository.purge(Instant.now().plusSeconds(1)) > 0);
+
+        when()
+                .get("/books/changes?since=" + token)
+        .then()
+                .statusCode(200)
+                .body("resync", equalTo(true))
+                .body("changes", Matchers.empty())
+                .body("token", equalTo((int) tokenAfter));
+
+        bookService.create(new Book(null, "test book 7", 7777, new HashSet<>()));
+
+        when()
+                .get("/books/changes?since=" + tokenAfter)
+        .then()
+                .statusCode(200)
+                .body("resync", equalTo(false))
+                .body("changes.book.title", Matchers.contains("test book 7"));
+    }
+
+    @Test
+    void testStream() throws Exception {
+
+        var subscribersBefore = bookChangeStream.getSubscribers();
+
+        var request = HttpRequest.newBuilder(streamUri)
+                .header(HttpHeaders.ACCEPT, MediaType.SERVER_SENT_EVENTS)
+                .build();
+        var response = HttpClient.newHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofLines());
+
+        // Only the changes committed after the subscription are sent
+        for (int i = 0; i < 100 && bookChangeStream.getSubscribers() == subscribersBefore; i++) {
+            Thread.sleep(50);
+        }
+
+        var book = bookService.create(new Book(null, "test book 6", 6666, new HashSet<>()));
+        bookService.deleteById(book.getId());
+
+        try (var lines = response.get(5, TimeUnit.SECONDS).body()) {
+            var events = CompletableFuture.supplyAsync(() -> lines
+                            .filter(line -> line.startsWith("event:") || line.startsWith("data:"))
+                            .limit(4)
+                            .toList())
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals("event:created", events.get(0));
+            assertTrue(events.get(1).contains("\"title\":\"test book 6\""));
+            assertEquals("event:deleted", events.get(2));
+            assertTrue(events.get(3).contains("\"id\":" + book.getId()));
+        }
+    }
+
+    private int jsonCacheHits() {
+        return when()
+                .get("/books/cache/stats")
+                .jsonPath()
+                .getInt("find { it.cache == 'books-json' }.hits");
+    }
+
+    private double metricValue(String metric) {
+        return when()
+                .get("/q/metrics")
+                .asString()
+                .lines()
+                .filter(line -> line.startsWith(metric + " "))
+                .mapToDouble(line -> Double.parseDouble(line.substring(metric.length() + 1)))
+                .findFirst()
+                .orElse(0);
+    }
+
+    private List<BookDto> toDtos(List<Book> books) {
+        return books.stream()
+                .map(book -> new BookDto(book.getId(), book.getTitle(), book.getYear(), book.getAuthors().stream()
+                        .map(Author::getName)
+                        .sorted()
+                        .toList(), book.getVersion()))
+                .toList();
     }
-}
\ No newline at end of file
+}
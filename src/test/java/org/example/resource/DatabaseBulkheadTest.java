@@ -0,0 +1,108 @@
+package org.example.resource;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+// With every permit of the bulkhead taken, the endpoints that need the database answer 503 right after 'max-wait'
+// (instead of waiting for a connection until 'acquisition-timeout'), and the ones served from memory still answer
+@QuarkusTest
+@TestProfile(DatabaseBulkheadTest.SmallPool.class)
+class DatabaseBulkheadTest {
+
+    // Flyway needs two connections at startup
+    private static final int POOL_SIZE = 2;
+
+    public static class SmallPool implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "quarkus.datasource.jdbc.min-size", "1",
+                    "quarkus.datasource.jdbc.max-size", String.valueOf(POOL_SIZE),
+                    "books.bulkhead.max-wait", "100ms"
+            );
+        }
+    }
+
+    @Inject
+    DatabaseBulkhead databaseBulkhead;
+
+    private int held;
+
+    @AfterEach
+    void tearDown() {
+        for (; held > 0; held--) {
+            databaseBulkhead.release();
+        }
+    }
+
+    @Test
+    void testRejectWhenEveryPermitIsTaken() {
+
+        // Sized from the pool
+        assertEquals(POOL_SIZE, databaseBulkhead.availablePermits());
+
+        for (; held < POOL_SIZE; held++) {
+            databaseBulkhead.acquire();
+        }
+
+        for (var path : new String[] { "/books", "/books/123456789", "/books/changes", "/books/export", "/authors" }) {
+            when()
+                    .get(path)
+            .then()
+                    .statusCode(503)
+                    .header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        given()
+                .contentType("application/json")
+                .body("{\"title\":\"bulkhead book\",\"year\":2000}")
+        .when()
+                .post("/books")
+        .then()
+                .statusCode(503);
+
+        when()
+                .get("/books/facets")
+        .then()
+                .statusCode(200);
+
+        for (; held > 0; held--) {
+            databaseBulkhead.release();
+        }
+
+        when()
+                .get("/books")
+        .then()
+                .statusCode(200);
+        when()
+                .get("/books/export")
+        .then()
+                .statusCode(200);
+        given()
+                .contentType("application/json")
+                .body("{\"title\":\"bulkhead book\",\"year\":2000}")
+        .when()
+                .post("/books")
+        .then()
+                .statusCode(200)
+                .body("title", equalTo("bulkhead book"));
+        when()
+                .delete("/books?year=2000")
+        .then()
+                .statusCode(200);
+
+        // Every permit was given back
+        assertEquals(POOL_SIZE, databaseBulkhead.availablePermits());
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
+import jakarta.inject.Inject;
+import org.example.dto.BookChange;
+import org.example.dto.BookDto;
+import org.example.event.BookEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class BookChangeStreamTest {
+
+    @Inject
+    BookChangeStream bookChangeStream;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Test
+    void testChanges() {
+
+        var subscriber = bookChangeStream.subscribe()
+                .subscribe().withSubscriber(AssertSubscriber.<BookChange>create(10));
+
+        var book = new BookDto(1L, "test book 1", 1111, List.of("test author 1"), 0L);
+        bookChangeStream.onBookEvent(BookEvent.created(book));
+        bookChangeStream.onBookEvent(BookEvent.deleted(book));
+        bookChangeStream.onBookEvent(BookEvent.cleared());
+
+        var changes = subscriber.awaitItems(3, Duration.ofSeconds(5)).getItems();
+        subscriber.cancel();
+
+        assertEquals(List.of("created", "deleted", "cleared"), changes.stream().map(BookChange::type).toList());
+        assertEquals(changes.getFirst().sequence() + 2, changes.getLast().sequence());
+        assertTrue(changes.getFirst().data().contains("\"title\":\"test book 1\""));
+        assertTrue(changes.get(1).data().contains("\"title\":\"test book 1\""));
+        assertEquals("null", changes.getLast().data());
+    }
+
+    @Test
+    void testSlowSubscriberOverflow() throws InterruptedException {
+
+        var overflows = meterRegistry.counter("books.stream.overflows");
+        var overflowsBefore = overflows.count();
+        var subscribersBefore = bookChangeStream.getSubscribers();
+
+        // Requests nothing, so every change waits in its buffer
+        var slow = bookChangeStream.subscribe()
+                .subscribe().withSubscriber(AssertSubscriber.<BookChange>create(0));
+        var fast = bookChangeStream.subscribe()
+                .subscribe().withSubscriber(AssertSubscriber.<BookChange>create(Long.MAX_VALUE));
+        assertEquals(subscribersBefore + 2, bookChangeStream.getSubscribers());
+
+        // One more than the buffer holds (books.stream.buffer-size)
+        var book = new BookDto(1L, "test book 1", 1111, List.of(), 0L);
+        for (int i = 0; i < 257; i++) {
+            bookChangeStream.onBookEvent(BookEvent.updated(book, book));
+        }
+
+        for (int i = 0; i < 100 && overflows.count() == overflowsBefore; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(overflowsBefore + 1, overflows.count());
+
+        // The slow subscriber gets the overflow as its last change, and only the fast one is left
+        slow.request(Long.MAX_VALUE);
+        slow.awaitCompletion(Duration.ofSeconds(5));
+        assertEquals("overflow", slow.getItems().getLast().type());
+        assertEquals(subscribersBefore + 1, bookChangeStream.getSubscribers());
+
+        fast.awaitItems(257, Duration.ofSeconds(5));
+        fast.assertNotTerminated();
+        fast.cancel();
+        assertEquals(subscribersBefore, bookChangeStream.getSubscribers());
+    }
+}
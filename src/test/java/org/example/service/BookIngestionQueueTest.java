@@ -0,0 +1,85 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.dto.IngestionStatus;
+import org.example.model.Book;
+import org.example.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class BookIngestionQueueTest {
+
+    private static final int ROUNDS = 20;
+    private static final int SUBMITTERS = 8;
+    private static final int ACCEPTED_BEFORE_STOP = 100;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    // Books submitted while the queue stops are either rejected or created, never accepted and dropped
+    @Test
+    void testStopRacingWithSubmits() throws Exception {
+
+        for (int round = 0; round < ROUNDS; round++) {
+
+            var queue = newQueue();
+            queue.onStart(null);
+
+            var accepted = new ConcurrentLinkedQueue<String>();
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < SUBMITTERS; i++) {
+                    executor.submit(() -> {
+                        while (true) {
+                            try {
+                                accepted.add(queue.submit(new Book(null, "test book " + ids.incrementAndGet(), 2000, new HashSet<>())).trackingId());
+                            } catch (RejectedExecutionException e) {
+                                return;
+                            }
+                        }
+                    });
+                }
+                while (accepted.size() < ACCEPTED_BEFORE_STOP) {
+                    Thread.sleep(1);
+                }
+                queue.onStop(null);
+            }
+
+            for (var trackingId : accepted) {
+                assertEquals(IngestionStatus.State.CREATED, queue.getStatus(trackingId).state(), trackingId);
+            }
+        }
+    }
+
+    private BookIngestionQueue newQueue() {
+
+        var bookRepository = mock(BookRepository.class);
+        doAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            books.forEach(book -> book.setId(ids.incrementAndGet()));
+            return null;
+        }).when(bookRepository).createAll(anyList());
+
+        var queue = new BookIngestionQueue();
+        queue.bookChunkWriter = new BookChunkWriter();
+        queue.bookChunkWriter.bookRepository = bookRepository;
+        queue.meterRegistry = new SimpleMeterRegistry();
+        queue.capacity = 100_000;
+        queue.batchSize = 500;
+        queue.maxDelay = Duration.ofMillis(1);
+        queue.shutdownTimeout = Duration.ofSeconds(30);
+        queue.statusMaximumSize = 1_000_000;
+        queue.statusExpireAfterWrite = Duration.ofHours(1);
+        return queue;
+    }
+}
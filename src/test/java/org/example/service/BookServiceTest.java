@@ -1,9 +1,11 @@
 package org.example.service;
 
+import io.quarkus.arc.Arc;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.mockito.InjectSpy;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
+import org.example.dto.BookDto;
 import org.example.model.Author;
 import org.example.model.Book;
 import org.example.repository.BookRepository;
@@ -16,6 +18,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -65,9 +69,28 @@ class BookServiceTest {
 
     @Test
     void testGetAll() {
-        var booksFound = bookService.getAll();
-        assertEquals(new HashSet<>(books), new HashSet<>(booksFound));
-        verify(bookRepository, times(1)).findAll();
+        var page = bookService.getAll(null, null);
+        assertEquals(books.stream().map(Book::getId).toList(), page.items().stream().map(BookDto::id).toList());
+        assertEquals(List.of("test author 2", "test author 3"), page.items().get(2).authors());
+        assertNull(page.nextCursor());
+        verify(bookRepository, times(1)).findPage(isNull(), anyInt());
+    }
+
+    @Test
+    void testGetAllPaginated() {
+
+        var booksFound = new ArrayList<BookDto>();
+        Long after = null;
+
+        do {
+            var page = bookService.getAll(after, 2);
+            assertTrue(page.items().size() <= 2);
+            booksFound.addAll(page.items());
+            after = page.nextCursor();
+        } while (after != null);
+
+        assertEquals(books.stream().map(Book::getTitle).toList(), booksFound.stream().map(BookDto::title).toList());
+        verify(bookRepository, times(3)).findPage(any(), eq(3));
     }
 
     @Test
@@ -75,9 +98,17 @@ class BookServiceTest {
         for (var book : books) {
             var bookFound = bookService.getById(book.getId());
             assertEquals(book, bookFound);
-            verify(bookRepository, times(1)).findById(book.getId());
+            verify(bookRepository, times(1)).findForRead(book.getId());
         }
-        verify(bookRepository, times(books.size())).findById(anyLong());
+        verify(bookRepository, times(books.size())).findForRead(anyLong());
+    }
+
+    @Test
+    void testGetByIdCached() {
+        var id = books.getFirst().getId();
+        assertEquals(books.getFirst(), bookService.getById(id));
+        assertEquals(books.getFirst(), bookService.getById(id));
+        verify(bookRepository, times(1)).findForRead(id);
     }
 
     @Test
@@ -85,7 +116,39 @@ class BookServiceTest {
         var id = -1L;
         var bookFound = bookService.getById(id);
         assertNull(bookFound);
-        verify(bookRepository, times(1)).findById(id);
+        verify(bookRepository, times(1)).findForRead(id);
+    }
+
+    @Test
+    void testGetByIdConcurrentLookupsShareOneLoad() throws Exception {
+
+        // A missing book is never cached, so without coalescing every lookup would query the database
+        var id = -2L;
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(300);
+            return invocation.callRealMethod();
+        }).when(bookRepository).findForRead(id);
+
+        var results = new ArrayList<Future<Book>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10; i++) {
+                // Every lookup in a request of its own
+                results.add(executor.submit(() -> {
+                    var requestContext = Arc.container().requestContext();
+                    requestContext.activate();
+                    try {
+                        return bookService.getById(id);
+                    } finally {
+                        requestContext.terminate();
+                    }
+                }));
+            }
+        }
+
+        for (var result : results) {
+            assertNull(result.get());
+        }
+        verify(bookRepository, times(1)).findForRead(id);
     }
 
     @Test
@@ -94,7 +157,7 @@ class BookServiceTest {
             var bookFound = bookService.getByTitle(book.getTitle());
             assertEquals(book, bookFound);
         }
-        verify(bookRepository, times(books.size())).find(anyString(), any(Object.class));
+        verify(bookRepository, times(books.size())).findByTitleForRead(anyString());
     }
 
     @Test
@@ -102,7 +165,46 @@ class BookServiceTest {
         var title = "-";
         var bookFound = bookService.getByTitle(title);
         assertNull(bookFound);
-        verify(bookRepository, times(1)).find(anyString(), any(Object.class));
+        verify(bookRepository, times(1)).findByTitleForRead(anyString());
+    }
+
+    @Test
+    void testCacheInvalidatedOnUpdate() {
+
+        var bookPersisted = books.get(1);
+        var id = bookPersisted.getId();
+        var title = bookPersisted.getTitle();
+
+        assertEquals(bookPersisted, bookService.getById(id));
+        assertEquals(bookPersisted, bookService.getByTitle(title));
+
+        var book = new Book();
+        book.setTitle(title + " updated");
+        bookService.update(id, book);
+
+        assertNotNull(bookService.getById(id));
+        assertEquals(id, bookService.getByTitle(book.getTitle()).getId());
+        assertNull(bookService.getByTitle(title));
+
+        verify(bookRepository, times(2)).findForRead(id);
+        verify(bookRepository, times(3)).findByTitleForRead(anyString());
+    }
+
+    @Test
+    void testCacheInvalidatedOnDelete() {
+
+        var bookPersisted = books.get(2);
+
+        assertEquals(bookPersisted, bookService.getById(bookPersisted.getId()));
+        assertEquals(bookPersisted, bookService.getByTitle(bookPersisted.getTitle()));
+
+        bookService.deleteById(bookPersisted.getId());
+
+        assertNull(bookService.getByTitle(bookPersisted.getTitle()));
+        bookService.getById(bookPersisted.getId());
+
+        verify(bookRepository, times(2)).findByTitleForRead(anyString());
+        verify(bookRepository, times(2)).findForRead(bookPersisted.getId());
     }
 
     @Test
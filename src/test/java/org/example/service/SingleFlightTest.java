@@ -0,0 +1,152 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 10;
+    // Time for all the callers to join the load of the first one
+    private static final Duration JOIN_DELAY = Duration.ofMillis(300);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testConcurrentLoadsShared() throws Exception {
+
+        var singleFlight = new SingleFlight<String, String>("test", Duration.ofSeconds(10), meterRegistry);
+        var loads = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        var results = loadConcurrently(singleFlight, key -> {
+            loads.incrementAndGet();
+            await(release);
+            return key + " loaded";
+        }, release);
+
+        for (var result : results) {
+            assertEquals("key loaded", result.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, count("leader"));
+        assertEquals(CALLERS - 1, count("coalesced"));
+
+        // Nothing is kept once the load is over
+        assertEquals("key loaded", singleFlight.load("key", key -> key + " loaded"));
+        assertEquals(2, count("leader"));
+    }
+
+    @Test
+    void testErrorSharedAndNotKept() throws Exception {
+
+        var singleFlight = new SingleFlight<String, String>("test", Duration.ofSeconds(10), meterRegistry);
+        var loads = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        var results = loadConcurrently(singleFlight, key -> {
+            loads.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("load failed");
+        }, release);
+
+        for (var result : results) {
+            var exception = assertThrows(ExecutionException.class, result::get);
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+            assertEquals("load failed", exception.getCause().getMessage());
+        }
+        assertEquals(1, loads.get());
+
+        assertEquals("key loaded", singleFlight.load("key", key -> key + " loaded"));
+    }
+
+    @Test
+    void testTimeoutLoadsAlone() throws Exception {
+
+        var singleFlight = new SingleFlight<String, String>("test", Duration.ofMillis(100), meterRegistry);
+        var loads = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var leader = executor.submit(() -> singleFlight.load("key", key -> {
+                loads.incrementAndGet();
+                await(release);
+                return "slow";
+            }));
+            Thread.sleep(JOIN_DELAY);
+
+            assertEquals("fast", singleFlight.load("key", key -> {
+                loads.incrementAndGet();
+                return "fast";
+            }));
+            assertEquals(1, count("timed-out"));
+
+            release.countDown();
+            assertEquals("slow", leader.get());
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testForget() throws Exception {
+
+        var singleFlight = new SingleFlight<String, String>("test", Duration.ofSeconds(10), meterRegistry);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            var leader = executor.submit(() -> singleFlight.load("key", key -> {
+                await(release);
+                return "old";
+            }));
+            Thread.sleep(JOIN_DELAY);
+
+            // The value has changed, so the load in progress isn't joined
+            singleFlight.forget("key");
+            assertEquals("new", singleFlight.load("key", key -> "new"));
+
+            release.countDown();
+            assertEquals("old", leader.get());
+        }
+        assertEquals(2, count("leader"));
+    }
+
+    private ArrayList<Future<String>> loadConcurrently(SingleFlight<String, String> singleFlight,
+                                                       Function<String, String> loader,
+                                                       CountDownLatch release) throws InterruptedException {
+        var results = new ArrayList<Future<String>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.load("key", loader)));
+            }
+            Thread.sleep(JOIN_DELAY);
+            release.countDown();
+        }
+        return results;
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("books.single-flight.loads", "lookup", "test", "result", result).count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.startup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Time from launching the packaged application to its first successful response, run with:
+//   ./mvnw verify -Pstartup-test                  (target/quarkus-app/quarkus-run.jar)
+//   ./mvnw verify -Pstartup-test -Dnative         (the native executable, as in Dockerfile.native)
+// The application runs on the prod profile, so it needs the database of application.properties
+// (or the one given by the QUARKUS_DATASOURCE_* environment variables, which it inherits).
+// Settings (system properties):
+//   startup-test.budget     time to the first successful request in ms (1000 for the native executable, 5000 for the jar)
+//   startup-test.port       HTTP port of the application (8085)
+//   startup-test.timeout    how long to wait for the application in ms (60000)
+// The output of the application is written to target/startup-test.log.
+@EnabledIfSystemProperty(named = "startup-test.enabled", matches = "true")
+class StartupTimeIT {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+    private static final Path LOG = Path.of("target", "startup-test.log");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    @Test
+    void testTimeToFirstRequest() throws Exception {
+
+        var isNative = Boolean.getBoolean("startup-test.native");
+        var budget = Long.getLong("startup-test.budget", isNative ? 1000 : 5000);
+        var port = Integer.getInteger("startup-test.port", 8085);
+        var timeout = Duration.ofMillis(Long.getLong("startup-test.timeout", 60000));
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/books?limit=1"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        var start = System.nanoTime();
+        var process = new ProcessBuilder(command(isNative, port))
+                .redirectErrorStream(true)
+                .redirectOutput(LOG.toFile())
+                .start();
+
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    fail("The application exited with code " + process.exitValue() + ", see " + LOG);
+                }
+                if (System.nanoTime() - start > timeout.toNanos()) {
+                    fail("The application didn't answer within " + timeout.toMillis() + " ms, see " + LOG);
+                }
+                if (isAnswered(request)) {
+                    break;
+                }
+                Thread.sleep(POLL_INTERVAL);
+            }
+
+            var elapsed = Duration.ofNanos(System.nanoTime() - start).toMillis();
+            System.out.printf("%nTime to the first successful request (%s): %d ms, budget %d ms%n%n",
+                    isNative ? "native" : "jar", elapsed, budget);
+
+            assertTrue(elapsed <= budget, "Time to the first successful request is " + elapsed + " ms, over the budget of " + budget + " ms");
+
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private List<String> command(boolean isNative, int port) {
+
+        var command = new ArrayList<String>();
+
+        if (isNative) {
+            var executable = Path.of(System.getProperty("native.image.path"));
+            assertTrue(Files.isExecutable(executable), "No native executable at " + executable);
+            command.add(executable.toString());
+            command.add("-Dquarkus.http.port=" + port);
+        } else {
+            var jar = Path.of("target", "quarkus-app", "quarkus-run.jar");
+            assertTrue(Files.exists(jar), "No application jar at " + jar);
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-Dquarkus.http.port=" + port);
+            command.add("-jar");
+            command.add(jar.toString());
+        }
+
+        return command;
+    }
+
+    private boolean isAnswered(HttpRequest request) throws InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // Not listening yet
+            return false;
+        }
+    }
+}